@@ -0,0 +1,178 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.neo4j.kernel.impl.util.FileUtils;
+
+/**
+ * A small repository of representative POMs for the benchmarks, written to a temporary directory:
+ * <ul>
+ * <li>"standalone": no parent, versioned dependencies, so {@link PomReader} handles it without the model builder</li>
+ * <li>"child": inherits its groupId, version and dependency versions from a parent with dependency management</li>
+ * <li>"grandchild": like child, but two levels down, with a property from the top</li>
+ * </ul>
+ * Dependencies are on org.example.lib:lib-N, which has no POMs, since building a model does not resolve them.
+ */
+public class BenchmarkRepository
+{
+    public static final String[] POMS = {"standalone", "child", "grandchild"};
+
+    private static final int DEPENDENCIES = 10;
+
+    private final File directory;
+
+    public static BenchmarkRepository create() throws IOException
+    {
+        File directory = File.createTempFile( "neomvn-benchmark", "" );
+        directory.delete();
+        directory.mkdirs();
+
+        BenchmarkRepository repository = new BenchmarkRepository( directory );
+        repository.write( "org.example", "parent", "1.0", parent() );
+        repository.write( "org.example", "middle", "1.0", middle() );
+        repository.write( "org.example", "standalone", "1.0", standalone() );
+        repository.write( "org.example", "child", "1.0", child( "parent", "child" ) );
+        repository.write( "org.example", "grandchild", "1.0", child( "middle", "grandchild" ) );
+        return repository;
+    }
+
+    private BenchmarkRepository( File directory )
+    {
+        this.directory = directory;
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @param name one of {@link #POMS}
+     */
+    public File pom( String name )
+    {
+        return new File( directory, "org/example/" + name + "/1.0/" + name + "-1.0.pom" );
+    }
+
+    public void delete() throws IOException
+    {
+        FileUtils.deleteRecursively( directory );
+    }
+
+    /**
+     * @return records for a synthetic repository of the given number of versions, spread over 100 groups and 1000
+     * artifacts, each depending on the versions before it
+     */
+    public static List<PomRecord> records( int versions, int dependencies )
+    {
+        List<PomRecord> records = new ArrayList<PomRecord>( versions );
+        for ( int i = 0; i < versions; i++ )
+        {
+            List<PomRecord.DependencyRecord> dependencyRecords = new ArrayList<PomRecord.DependencyRecord>();
+            for ( int j = 1; j <= dependencies && j <= i; j++ )
+            {
+                int dependency = i - 1 - j * 7 % i;
+                dependencyRecords.add( new PomRecord.DependencyRecord( groupId( dependency ), artifactId( dependency ),
+                        version( dependency ), "compile", false ) );
+            }
+            records.add( new PomRecord( groupId( i ), artifactId( i ), version( i ), artifactId( i ), null,
+                    dependencyRecords ) );
+        }
+        return records;
+    }
+
+    private static String groupId( int i )
+    {
+        return "org.example.g" + (i % 100);
+    }
+
+    private static String artifactId( int i )
+    {
+        return "a" + (i % 1000);
+    }
+
+    private static String version( int i )
+    {
+        return "1." + i;
+    }
+
+    private void write( String groupId, String artifactId, String version, String pom ) throws IOException
+    {
+        File file = new File( directory, groupId.replace( '.', '/' ) + "/" + artifactId + "/" + version + "/"
+                + artifactId + "-" + version + ".pom" );
+        file.getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try
+        {
+            out.write( pom );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static String parent()
+    {
+        StringBuilder pom = new StringBuilder();
+        pom.append( "<project>\n<modelVersion>4.0.0</modelVersion>\n" );
+        pom.append( "<groupId>org.example</groupId><artifactId>parent</artifactId><version>1.0</version>\n" );
+        pom.append( "<packaging>pom</packaging><name>Parent</name>\n" );
+        pom.append( "<properties><lib.version>2.0</lib.version></properties>\n" );
+        pom.append( "<dependencyManagement><dependencies>\n" );
+        for ( int i = 0; i < DEPENDENCIES; i++ )
+        {
+            pom.append( "<dependency><groupId>org.example.lib</groupId><artifactId>lib-" ).append( i )
+                    .append( "</artifactId><version>${lib.version}</version></dependency>\n" );
+        }
+        pom.append( "</dependencies></dependencyManagement>\n</project>\n" );
+        return pom.toString();
+    }
+
+    private static String middle()
+    {
+        return "<project>\n<modelVersion>4.0.0</modelVersion>\n"
+                + "<parent><groupId>org.example</groupId><artifactId>parent</artifactId><version>1.0</version></parent>\n"
+                + "<artifactId>middle</artifactId><packaging>pom</packaging>\n</project>\n";
+    }
+
+    private static String standalone()
+    {
+        StringBuilder pom = new StringBuilder();
+        pom.append( "<project>\n<modelVersion>4.0.0</modelVersion>\n" );
+        pom.append( "<groupId>org.example</groupId><artifactId>standalone</artifactId><version>1.0</version>\n" );
+        pom.append( "<name>Standalone</name>\n<dependencies>\n" );
+        for ( int i = 0; i < DEPENDENCIES; i++ )
+        {
+            pom.append( "<dependency><groupId>org.example.lib</groupId><artifactId>lib-" ).append( i )
+                    .append( "</artifactId><version>2.0</version>" )
+                    .append( i % 3 == 0 ? "<scope>test</scope>" : "" ).append( "</dependency>\n" );
+        }
+        pom.append( "</dependencies>\n</project>\n" );
+        return pom.toString();
+    }
+
+    private static String child( String parent, String artifactId )
+    {
+        StringBuilder pom = new StringBuilder();
+        pom.append( "<project>\n<modelVersion>4.0.0</modelVersion>\n" );
+        pom.append( "<parent><groupId>org.example</groupId><artifactId>" ).append( parent )
+                .append( "</artifactId><version>1.0</version></parent>\n" );
+        pom.append( "<artifactId>" ).append( artifactId ).append( "</artifactId>\n" );
+        pom.append( "<name>${project.artifactId} ${lib.version}</name>\n<dependencies>\n" );
+        for ( int i = 0; i < DEPENDENCIES; i++ )
+        {
+            pom.append( "<dependency><groupId>org.example.lib</groupId><artifactId>lib-" ).append( i )
+                    .append( "</artifactId>" ).append( i % 3 == 0 ? "<scope>test</scope>" : "" )
+                    .append( "</dependency>\n" );
+        }
+        pom.append( "</dependencies>\n</project>\n" );
+        return pom.toString();
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.kernel.impl.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing versions and dependencies into a store that already holds a synthetic repository, which is where an import
+ * spends its time once POMs are resolved:
+ * <ul>
+ * <li>{@link #version()}: a new version of an existing artifact, so group and artifact are looked up</li>
+ * <li>{@link #dependencies()}: dependencies on versions that are in the store</li>
+ * <li>{@link #missingDependencies()}: dependencies on versions that are not, so placeholders are created</li>
+ * </ul>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class GraphWriterBenchmark
+{
+    private static final int DEPENDENCIES = 10;
+
+    @Param( {"transactional", "bulk", "export"} )
+    public String writer;
+
+    @Param( {"10000", "100000"} )
+    public int versions;
+
+    private File dbPath;
+    private GraphWriter graphWriter;
+    private List<PomRecord> records;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        dbPath = File.createTempFile( "neomvn-benchmark-db", "" );
+        dbPath.delete();
+
+        if ( writer.equals( "bulk" ) )
+            graphWriter = new BatchGraphWriter( dbPath );
+        else if ( writer.equals( "export" ) )
+            graphWriter = new ExportGraphWriter( dbPath, new ImportMetrics() );
+        else
+            graphWriter = new TransactionalGraphWriter( dbPath );
+        records = BenchmarkRepository.records( versions, DEPENDENCIES );
+        for ( PomRecord record : records )
+        {
+            graphWriter.version( record );
+            graphWriter.batch();
+        }
+        for ( PomRecord record : records )
+        {
+            graphWriter.dependencies( record );
+            graphWriter.batch();
+        }
+        graphWriter.finish();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        graphWriter.shutdown();
+        FileUtils.deleteRecursively( dbPath );
+    }
+
+    @Benchmark
+    public void version()
+    {
+        PomRecord existing = records.get( next % versions );
+        graphWriter.version( new PomRecord( existing.groupId, existing.artifactId, "2." + next++, existing.name, null,
+                existing.dependencies ) );
+        graphWriter.batch();
+    }
+
+    @Benchmark
+    public void dependencies()
+    {
+        graphWriter.dependencies( records.get( next++ % versions ) );
+        graphWriter.batch();
+    }
+
+    @Benchmark
+    public void missingDependencies()
+    {
+        PomRecord existing = records.get( next % versions );
+        List<PomRecord.DependencyRecord> missing = new ArrayList<PomRecord.DependencyRecord>();
+        for ( PomRecord.DependencyRecord dependency : existing.dependencies )
+        {
+            missing.add( new PomRecord.DependencyRecord( dependency.groupId, dependency.artifactId,
+                    "3." + next, dependency.scope, dependency.optional ) );
+        }
+        next++;
+        graphWriter.dependencies( new PomRecord( existing.groupId, existing.artifactId, existing.version,
+                existing.name, null, missing ) );
+        graphWriter.batch();
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mapping coordinates to a POM in the repository, which happens for every parent lookup and every dependency the
+ * downloader follows. {@link RepositoryModelResolver#getLocalFile(String, String, String)} splits the groupId and
+ * builds a File per path element; {@link RepositoryModelResolver#getPath(String, String, String)} builds one string.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class LocalFileBenchmark
+{
+    @Param( {"junit", "org.apache.maven.plugins", "com.github.rickardoberg.neomvn"} )
+    public String groupId;
+
+    private RepositoryModelResolver resolver;
+
+    @Setup
+    public void setup()
+    {
+        resolver = new RepositoryModelResolver( new File( "repository" ), "http://localhost:1",
+                new DownloadEngine( 1, 20, 0, 0 ) );
+    }
+
+    @Benchmark
+    public File getLocalFile()
+    {
+        return resolver.getLocalFile( groupId, "maven-compiler-plugin", "3.1" );
+    }
+
+    @Benchmark
+    public String getPath()
+    {
+        return RepositoryModelResolver.getPath( groupId, "maven-compiler-plugin", "3.1" );
+    }
+}
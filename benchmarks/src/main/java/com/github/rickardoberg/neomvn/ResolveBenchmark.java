@@ -0,0 +1,75 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the effective model of a POM, as the version pass does for every POM. With the model cache warm, parents
+ * are not read again, as in an import of many POMs sharing parents; {@link #resolveColdCache()} reads them every time.
+ * {@link #record()} is what the import actually calls, and skips the model builder where {@link PomReader} can.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class ResolveBenchmark
+{
+    @Param( {"standalone", "child", "grandchild"} )
+    public String pom;
+
+    private BenchmarkRepository repository;
+    private ModelResolver resolver;
+    private File pomFile;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        repository = BenchmarkRepository.create();
+        // Every parent is in the repository, so nothing is downloaded
+        resolver = new ModelResolver( new RepositoryModelResolver( repository.getDirectory(), "http://localhost:1",
+                new DownloadEngine( 1, 20, 0, 0 ) ) );
+        pomFile = repository.pom( pom );
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        repository.delete();
+    }
+
+    @Benchmark
+    public Model resolve()
+    {
+        return resolver.resolve( pomFile );
+    }
+
+    @Benchmark
+    public Model resolveColdCache()
+    {
+        resolver.getCache().clear();
+        return resolver.resolve( pomFile );
+    }
+
+    @Benchmark
+    public PomRecord record() throws IOException
+    {
+        return resolver.record( pomFile );
+    }
+}
@@ -0,0 +1,292 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.neo4j.kernel.impl.util.FileUtils;
+
+/**
+ * Imports {@link SyntheticRepository}s of increasing size and reports how the import scales: wall time, POMs per
+ * second, peak heap and store size for each size. Each import runs {@link Main} in its own JVM, so heap and JIT
+ * state do not carry over between sizes. Repositories are generated once into the work directory and reused.
+ * <p/>
+ * Results can be saved as a baseline and compared against in later runs. A size that got slower, or grew heap or
+ * store, by more than the tolerance is reported as a regression, and the exit code is 1.
+ * <p/>
+ * Usage: ScaleBenchmark [--sizes 10000,100000,1000000] [--work dir] [--baseline file] [--save-baseline]
+ * [--tolerance percent] [--heap 4g] [import options, such as --threads 8 or --bulk]
+ */
+public class ScaleBenchmark
+{
+    private static final Pattern PEAK_HEAP = Pattern.compile( "\"peakUsed\": (\\d+)" );
+    private static final Pattern PASS = Pattern.compile( "\\{\"name\": \"(\\w+)\", \"poms\": (\\d+), \"seconds\": ([\\d.]+)" );
+
+    private final List<Integer> sizes = new ArrayList<Integer>();
+    private File work = new File( "scale" );
+    private File baseline = new File( "scale-baseline.txt" );
+    private boolean saveBaseline;
+    private double tolerance = 10;
+    private String heap = "4g";
+    private final List<String> importOptions = new ArrayList<String>();
+
+    public static void main( String[] args ) throws IOException, InterruptedException
+    {
+        ScaleBenchmark benchmark = new ScaleBenchmark( args );
+        System.exit( benchmark.run() ? 0 : 1 );
+    }
+
+    public ScaleBenchmark( String[] args )
+    {
+        for ( int i = 0; i < args.length; i++ )
+        {
+            if ( args[i].equals( "--sizes" ) )
+            {
+                for ( String size : args[++i].split( "," ) )
+                {
+                    sizes.add( Integer.parseInt( size.trim() ) );
+                }
+            }
+            else if ( args[i].equals( "--work" ) )
+                work = new File( args[++i] );
+            else if ( args[i].equals( "--baseline" ) )
+                baseline = new File( args[++i] );
+            else if ( args[i].equals( "--save-baseline" ) )
+                saveBaseline = true;
+            else if ( args[i].equals( "--tolerance" ) )
+                tolerance = Double.parseDouble( args[++i] );
+            else if ( args[i].equals( "--heap" ) )
+                heap = args[++i];
+            else
+                importOptions.add( args[i] );
+        }
+
+        if ( sizes.isEmpty() )
+        {
+            sizes.add( 10000 );
+            sizes.add( 100000 );
+        }
+    }
+
+    /**
+     * @return false if any size regressed against the baseline
+     */
+    public boolean run() throws IOException, InterruptedException
+    {
+        work.mkdirs();
+        Map<Integer, Result> baselineResults = baseline.exists() ? load( baseline ) : new LinkedHashMap<Integer, Result>();
+        Map<Integer, Result> results = new LinkedHashMap<Integer, Result>();
+
+        boolean regressed = false;
+        for ( int size : sizes )
+        {
+            File repository = generate( size );
+            Result result = importRepository( size, repository );
+            results.put( size, result );
+
+            System.out.println( result );
+            Result previous = baselineResults.get( size );
+            if ( previous != null )
+                regressed |= compare( previous, result );
+        }
+
+        if ( saveBaseline )
+        {
+            save( results, baseline );
+            System.out.println( "Saved baseline to " + baseline );
+        }
+        return !regressed;
+    }
+
+    private File generate( int size ) throws IOException
+    {
+        File repository = new File( work, "repository-" + size );
+        File done = new File( repository, ".generated" );
+        if ( !done.exists() )
+        {
+            FileUtils.deleteRecursively( repository );
+            long start = System.currentTimeMillis();
+            int poms = new SyntheticRepository( size, 42 ).write( repository );
+            done.createNewFile();
+            System.out.println( String.format( "Generated %d POMs in %d s", poms,
+                    (System.currentTimeMillis() - start) / 1000 ) );
+        }
+        return repository;
+    }
+
+    private Result importRepository( int size, File repository ) throws IOException, InterruptedException
+    {
+        File db = new File( work, "db-" + size );
+        File report = new File( work, "report-" + size + ".json" );
+        File log = new File( work, "import-" + size + ".log" );
+        report.delete();
+
+        List<String> command = new ArrayList<String>();
+        command.add( new File( new File( System.getProperty( "java.home" ), "bin" ), "java" ).getPath() );
+        command.add( "-Xmx" + heap );
+        command.add( "-cp" );
+        command.add( System.getProperty( "java.class.path" ) );
+        command.add( Main.class.getName() );
+        command.add( "--db" );
+        command.add( db.getPath() );
+        command.add( "--report" );
+        command.add( report.getPath() );
+        command.addAll( importOptions );
+        command.add( repository.getPath() );
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder( command ).redirectErrorStream( true ).redirectOutput( log ).start();
+        int exit = process.waitFor();
+        double seconds = (System.nanoTime() - start) / 1000000000D;
+        if ( exit != 0 || !report.exists() )
+            throw new IOException( "Import of " + size + " POMs failed, see " + log );
+
+        String json = read( report );
+        Matcher peakHeap = PEAK_HEAP.matcher( json );
+        long heapBytes = peakHeap.find() ? Long.parseLong( peakHeap.group( 1 ) ) : 0;
+        long poms = 0;
+        Matcher pass = PASS.matcher( json );
+        while ( pass.find() )
+        {
+            if ( pass.group( 1 ).equals( "versions" ) )
+                poms = Long.parseLong( pass.group( 2 ) );
+        }
+
+        return new Result( size, poms, seconds, heapBytes, size( db ) );
+    }
+
+    /**
+     * @return true if the result is worse than the baseline by more than the tolerance
+     */
+    private boolean compare( Result previous, Result result )
+    {
+        boolean regressed = false;
+        regressed |= report( "POMs/s", previous.pomsPerSecond(), result.pomsPerSecond(), false );
+        regressed |= report( "peak heap MB", previous.heapBytes >> 20, result.heapBytes >> 20, true );
+        regressed |= report( "store MB", previous.storeBytes >> 20, result.storeBytes >> 20, true );
+        return regressed;
+    }
+
+    private boolean report( String what, double previous, double current, boolean lowerIsBetter )
+    {
+        double change = previous == 0 ? 0 : (current - previous) * 100 / previous;
+        boolean regressed = lowerIsBetter ? change > tolerance : change < -tolerance;
+        System.out.println( String.format( "  %-13s %10.1f -> %10.1f (%+.1f%%)%s", what, previous, current, change,
+                regressed ? "  REGRESSION" : "" ) );
+        return regressed;
+    }
+
+    private static long size( File file )
+    {
+        if ( file.isFile() )
+            return file.length();
+
+        long size = 0;
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                size += size( child );
+            }
+        }
+        return size;
+    }
+
+    private static String read( File file ) throws IOException
+    {
+        StringBuilder content = new StringBuilder();
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+        try
+        {
+            String line;
+            while ( (line = reader.readLine()) != null )
+            {
+                content.append( line ).append( '\n' );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return content.toString();
+    }
+
+    /**
+     * The baseline is one line per size: size, POMs, seconds, peak heap bytes and store bytes, separated by tabs.
+     */
+    private static Map<Integer, Result> load( File file ) throws IOException
+    {
+        Map<Integer, Result> results = new LinkedHashMap<Integer, Result>();
+        for ( String line : read( file ).split( "\n" ) )
+        {
+            if ( line.length() == 0 || line.startsWith( "#" ) )
+                continue;
+            String[] fields = line.split( "\t" );
+            Result result = new Result( Integer.parseInt( fields[0] ), Long.parseLong( fields[1] ),
+                    Double.parseDouble( fields[2] ), Long.parseLong( fields[3] ), Long.parseLong( fields[4] ) );
+            results.put( result.size, result );
+        }
+        return results;
+    }
+
+    private static void save( Map<Integer, Result> results, File file ) throws IOException
+    {
+        Writer out = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try
+        {
+            out.write( "# size\tPOMs\tseconds\tpeak heap bytes\tstore bytes\n" );
+            for ( Result result : results.values() )
+            {
+                out.write( String.format( Locale.ROOT, "%d\t%d\t%.3f\t%d\t%d\n", result.size, result.poms,
+                        result.seconds, result.heapBytes, result.storeBytes ) );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static class Result
+    {
+        private final int size;
+        private final long poms;
+        private final double seconds;
+        private final long heapBytes;
+        private final long storeBytes;
+
+        private Result( int size, long poms, double seconds, long heapBytes, long storeBytes )
+        {
+            this.size = size;
+            this.poms = poms;
+            this.seconds = seconds;
+            this.heapBytes = heapBytes;
+            this.storeBytes = storeBytes;
+        }
+
+        private double pomsPerSecond()
+        {
+            return seconds == 0 ? 0 : poms / seconds;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format( "%d POMs: %.1f s, %.0f POMs/s, peak heap %d MB, store %d MB", poms, seconds,
+                    pomsPerSecond(), heapBytes >> 20, storeBytes >> 20 );
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates a Maven repository of a given number of POMs that looks like a real one to the import:
+ * <ul>
+ * <li>Most POMs belong to multi-module projects, released together, with a project parent that inherits from an
+ * organisation parent. Half the projects, but only about one POM in seven, are single-module projects with no
+ * parent, which {@link PomReader} reads without the model builder.</li>
+ * <li>Some project parents import a shared BOM, and dependencies on what the BOM manages have no version.</li>
+ * <li>Versions follow a few common schemes, so "1.0", "1.1" and "1.0.0" are everywhere, with the odd qualifier.</li>
+ * <li>The number of dependencies per POM, the number of modules and releases per project, and how often an artifact
+ * is depended on all follow power laws: most POMs have a few dependencies, and a few artifacts are used by
+ * everything.</li>
+ * <li>About 1% of dependencies are on versions that do not exist, and become placeholders.</li>
+ * </ul>
+ * The same size and seed always give the same repository.
+ * <p/>
+ * Usage: SyntheticRepository &lt;directory&gt; &lt;POMs&gt; [seed]
+ */
+public class SyntheticRepository
+{
+    private static final String[] SCOPES = {"compile", "compile", "compile", "compile", "compile", "compile",
+            "compile", "test", "test", "provided", "runtime"};
+    private static final String[] QUALIFIERS = {"-alpha-1", "-beta-1", "-beta-2", "-RC1", "-RC2", "-M1"};
+    private static final int BOM_ENTRIES = 200;
+
+    private final Random random;
+    private final int targetPoms;
+
+    private final List<Organisation> organisations = new ArrayList<Organisation>();
+    private final List<Project> projects = new ArrayList<Project>();
+    private final List<Bom> boms = new ArrayList<Bom>();
+    // Modules by popularity, most depended on first
+    private final List<Module> ranked = new ArrayList<Module>();
+    private int poms;
+
+    public static void main( String[] args ) throws IOException
+    {
+        if ( args.length < 2 )
+        {
+            System.err.println( "Usage: SyntheticRepository <directory> <POMs> [seed]" );
+            System.exit( 1 );
+        }
+
+        long start = System.currentTimeMillis();
+        SyntheticRepository repository = new SyntheticRepository( Integer.parseInt( args[1] ),
+                args.length > 2 ? Long.parseLong( args[2] ) : 42 );
+        int written = repository.write( new File( args[0] ) );
+        System.out.println( String.format( "Wrote %d POMs to %s in %d s", written, args[0],
+                (System.currentTimeMillis() - start) / 1000 ) );
+    }
+
+    public SyntheticRepository( int poms, long seed )
+    {
+        this.targetPoms = poms;
+        this.random = new Random( seed );
+        plan();
+    }
+
+    /**
+     * @return number of POMs written
+     */
+    public int write( File directory ) throws IOException
+    {
+        int written = 0;
+        for ( Organisation organisation : organisations )
+        {
+            for ( String version : organisation.versions )
+            {
+                write( directory, organisation.groupId, "parent", version, organisationParent( organisation, version ) );
+                written++;
+            }
+        }
+
+        for ( Bom bom : boms )
+        {
+            for ( String version : bom.versions )
+            {
+                write( directory, "org.synthetic.bom", bom.artifactId, version, bom( bom, version ) );
+                written++;
+            }
+        }
+
+        for ( Project project : projects )
+        {
+            for ( int release = 0; release < project.versions.length; release++ )
+            {
+                String version = project.versions[release];
+                if ( project.organisation != null )
+                {
+                    write( directory, project.groupId, project.name + "-parent", version,
+                            projectParent( project, release ) );
+                    written++;
+                }
+                for ( Module module : project.modules )
+                {
+                    write( directory, project.groupId, module.artifactId, version, module( module, release ) );
+                    written++;
+                }
+            }
+        }
+        return written;
+    }
+
+    private void plan()
+    {
+        int organisationCount = Math.max( 1, targetPoms / 20000 );
+        for ( int i = 0; i < organisationCount; i++ )
+        {
+            Organisation organisation = new Organisation( "org.synthetic" + i, versions( 1 + random.nextInt( 5 ) ) );
+            organisations.add( organisation );
+            poms += organisation.versions.length;
+        }
+
+        int bomCount = Math.max( 2, targetPoms / 25000 );
+        for ( int i = 0; i < bomCount; i++ )
+        {
+            boms.add( new Bom( "bom-" + i, new String[]{"1.0", "2.0", "3.0"} ) );
+            poms += 3;
+        }
+
+        while ( poms < targetPoms )
+        {
+            Project project;
+            if ( random.nextBoolean() )
+            {
+                // Single module, no parent
+                project = new Project( "org.synthetic.lib" + projects.size() % 1000, "lib" + projects.size(), null,
+                        versions( powerLaw( 1, 40, 1.8 ) ) );
+                project.modules.add( new Module( project, project.name ) );
+            }
+            else
+            {
+                Organisation organisation = organisations.get( random.nextInt( organisations.size() ) );
+                String name = "project" + projects.size();
+                project = new Project( organisation.groupId + "." + name, name, organisation,
+                        versions( powerLaw( 1, 80, 1.8 ) ) );
+                int modules = powerLaw( 1, 40, 2.2 );
+                for ( int i = 0; i < modules; i++ )
+                {
+                    project.modules.add( new Module( project, name + "-module" + i ) );
+                }
+                if ( random.nextInt( 5 ) < 2 )
+                    project.bom = boms.get( random.nextInt( boms.size() ) );
+                poms += project.versions.length;
+            }
+
+            // Do not overshoot much on small repositories
+            int projectPoms = project.modules.size() * project.versions.length;
+            if ( poms + projectPoms > targetPoms && poms > 0 )
+            {
+                int releases = Math.max( 1, (targetPoms - poms) / project.modules.size() );
+                if ( releases < project.versions.length )
+                {
+                    if ( project.organisation != null )
+                        poms -= project.versions.length - releases;
+                    String[] versions = new String[releases];
+                    System.arraycopy( project.versions, 0, versions, 0, releases );
+                    project.versions = versions;
+                    projectPoms = project.modules.size() * releases;
+                }
+            }
+
+            projects.add( project );
+            ranked.addAll( project.modules );
+            poms += projectPoms;
+        }
+
+        Collections.shuffle( ranked, random );
+
+        // BOMs manage the most popular artifacts, at their latest release
+        for ( Bom bom : boms )
+        {
+            for ( int i = 0; i < Math.min( BOM_ENTRIES, ranked.size() ); i++ )
+            {
+                if ( random.nextBoolean() )
+                {
+                    Module module = ranked.get( i );
+                    bom.managed.put( module, module.project.versions[module.project.versions.length - 1] );
+                }
+            }
+        }
+    }
+
+    private String organisationParent( Organisation organisation, String version )
+    {
+        StringBuilder pom = header();
+        coordinates( pom, organisation.groupId, "parent", version );
+        pom.append( "  <packaging>pom</packaging>\n" );
+        pom.append( "  <name>" ).append( organisation.groupId ).append( " parent</name>\n" );
+        pom.append( "  <properties>\n    <junit.version>4.11</junit.version>\n" );
+        pom.append( "    <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>\n  </properties>\n" );
+        return pom.append( "</project>\n" ).toString();
+    }
+
+    private String bom( Bom bom, String version )
+    {
+        StringBuilder pom = header();
+        coordinates( pom, "org.synthetic.bom", bom.artifactId, version );
+        pom.append( "  <packaging>pom</packaging>\n  <dependencyManagement>\n    <dependencies>\n" );
+        for ( Map.Entry<Module, String> entry : bom.managed.entrySet() )
+        {
+            dependency( pom, entry.getKey().project.groupId, entry.getKey().artifactId, entry.getValue(), null,
+                    false, "      " );
+        }
+        pom.append( "    </dependencies>\n  </dependencyManagement>\n" );
+        return pom.append( "</project>\n" ).toString();
+    }
+
+    private String projectParent( Project project, int release )
+    {
+        Organisation organisation = project.organisation;
+        String version = project.versions[release];
+
+        StringBuilder pom = header();
+        pom.append( "  <parent>\n" );
+        coordinates( pom, organisation.groupId, "parent",
+                organisation.versions[Math.min( release, organisation.versions.length - 1 )] );
+        pom.append( "  </parent>\n" );
+        coordinates( pom, project.groupId, project.name + "-parent", version );
+        pom.append( "  <packaging>pom</packaging>\n" );
+        pom.append( "  <name>" ).append( project.name ).append( "</name>\n" );
+
+        pom.append( "  <modules>\n" );
+        for ( Module module : project.modules )
+        {
+            pom.append( "    <module>" ).append( module.artifactId ).append( "</module>\n" );
+        }
+        pom.append( "  </modules>\n" );
+
+        // Sibling modules are managed at the project version, and the BOM imported
+        pom.append( "  <dependencyManagement>\n    <dependencies>\n" );
+        for ( Module module : project.modules )
+        {
+            dependency( pom, "${project.groupId}", module.artifactId, "${project.version}", null, false, "      " );
+        }
+        if ( project.bom != null )
+        {
+            pom.append( "      <dependency>\n        <groupId>org.synthetic.bom</groupId>\n" );
+            pom.append( "        <artifactId>" ).append( project.bom.artifactId ).append( "</artifactId>\n" );
+            pom.append( "        <version>" ).append( project.bom.versions[release % project.bom.versions.length] )
+                    .append( "</version>\n" );
+            pom.append( "        <type>pom</type>\n        <scope>import</scope>\n      </dependency>\n" );
+        }
+        pom.append( "    </dependencies>\n  </dependencyManagement>\n" );
+        return pom.append( "</project>\n" ).toString();
+    }
+
+    private String module( Module module, int release )
+    {
+        Project project = module.project;
+        StringBuilder pom = header();
+        if ( project.organisation != null )
+        {
+            pom.append( "  <parent>\n" );
+            coordinates( pom, project.groupId, project.name + "-parent", project.versions[release] );
+            pom.append( "  </parent>\n" );
+            pom.append( "  <artifactId>" ).append( module.artifactId ).append( "</artifactId>\n" );
+            pom.append( "  <name>${project.artifactId}</name>\n" );
+        }
+        else
+        {
+            coordinates( pom, project.groupId, module.artifactId, project.versions[release] );
+            pom.append( "  <name>" ).append( module.artifactId ).append( "</name>\n" );
+        }
+
+        int dependencies = powerLaw( 1, 200, 2.2 ) - 1;
+        if ( dependencies > 0 )
+        {
+            pom.append( "  <dependencies>\n" );
+            Map<String, Boolean> added = new HashMap<String, Boolean>();
+            for ( int i = 0; i < dependencies; i++ )
+            {
+                Module target;
+                String version;
+                if ( project.modules.size() > 1 && random.nextInt( 10 ) < 3 )
+                {
+                    target = project.modules.get( random.nextInt( project.modules.size() ) );
+                    version = null;
+                }
+                else
+                {
+                    // Popular artifacts are picked far more often
+                    target = ranked.get( (int) (ranked.size() * Math.pow( random.nextDouble(), 4 )) );
+                    String[] versions = target.project.versions;
+                    if ( random.nextInt( 100 ) == 0 )
+                        version = "0.0-missing";
+                    else
+                        version = versions[versions.length - 1 - powerLaw( 1, versions.length, 2.0 ) + 1];
+                    if ( project.bom != null && project.bom.managed.containsKey( target ) )
+                        version = null;
+                }
+                if ( target == module || added.put( target.artifactId, true ) != null )
+                    continue;
+
+                String scope = SCOPES[random.nextInt( SCOPES.length )];
+                dependency( pom, target.project.groupId, target.artifactId, version,
+                        scope.equals( "compile" ) ? null : scope, random.nextInt( 30 ) == 0, "    " );
+            }
+            pom.append( "  </dependencies>\n" );
+        }
+        return pom.append( "</project>\n" ).toString();
+    }
+
+    private String[] versions( int count )
+    {
+        String[] versions = new String[count];
+        int scheme = random.nextInt( 10 );
+        boolean finalSuffix = random.nextInt( 20 ) == 0;
+        int major = scheme == 8 ? 0 : 1;
+        int minor = scheme == 8 ? 1 : 0;
+        int patch = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            String version;
+            if ( scheme == 9 )
+                version = Integer.toString( 20100101 + i * 7 );
+            else if ( scheme >= 5 && scheme <= 7 )
+                version = major + "." + minor + "." + patch;
+            else
+                version = patch == 0 ? major + "." + minor : major + "." + minor + "." + patch;
+
+            if ( finalSuffix )
+                version += ".Final";
+            else if ( random.nextInt( 10 ) == 0 )
+                version += QUALIFIERS[random.nextInt( QUALIFIERS.length )];
+            else if ( i == count - 1 && random.nextInt( 20 ) == 0 )
+                version += "-SNAPSHOT";
+            versions[i] = version;
+
+            int step = random.nextInt( 10 );
+            if ( step < 5 )
+                patch++;
+            else if ( step < 9 )
+            {
+                minor++;
+                patch = 0;
+            }
+            else
+            {
+                major++;
+                minor = 0;
+                patch = 0;
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * @return a value in [min, max] from a Pareto distribution with the given exponent
+     */
+    private int powerLaw( int min, int max, double alpha )
+    {
+        double value = min * Math.pow( 1 - random.nextDouble(), -1 / (alpha - 1) );
+        return (int) Math.min( max, Math.floor( value ) );
+    }
+
+    private static StringBuilder header()
+    {
+        return new StringBuilder( 1024 ).append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" )
+                .append( "<project>\n  <modelVersion>4.0.0</modelVersion>\n" );
+    }
+
+    private static void coordinates( StringBuilder pom, String groupId, String artifactId, String version )
+    {
+        pom.append( "  <groupId>" ).append( groupId ).append( "</groupId>\n" );
+        pom.append( "  <artifactId>" ).append( artifactId ).append( "</artifactId>\n" );
+        pom.append( "  <version>" ).append( version ).append( "</version>\n" );
+    }
+
+    private static void dependency( StringBuilder pom, String groupId, String artifactId, String version,
+                                    String scope, boolean optional, String indent )
+    {
+        pom.append( indent ).append( "<dependency>\n" );
+        pom.append( indent ).append( "  <groupId>" ).append( groupId ).append( "</groupId>\n" );
+        pom.append( indent ).append( "  <artifactId>" ).append( artifactId ).append( "</artifactId>\n" );
+        if ( version != null )
+            pom.append( indent ).append( "  <version>" ).append( version ).append( "</version>\n" );
+        if ( scope != null )
+            pom.append( indent ).append( "  <scope>" ).append( scope ).append( "</scope>\n" );
+        if ( optional )
+            pom.append( indent ).append( "  <optional>true</optional>\n" );
+        pom.append( indent ).append( "</dependency>\n" );
+    }
+
+    private static void write( File directory, String groupId, String artifactId, String version, String pom )
+        throws IOException
+    {
+        File file = new File( directory, groupId.replace( '.', '/' ) + "/" + artifactId + "/" + version + "/"
+                + artifactId + "-" + version + ".pom" );
+        file.getParentFile().mkdirs();
+        Writer out = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" ) );
+        try
+        {
+            out.write( pom );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static class Organisation
+    {
+        private final String groupId;
+        private final String[] versions;
+
+        private Organisation( String groupId, String[] versions )
+        {
+            this.groupId = groupId;
+            this.versions = versions;
+        }
+    }
+
+    private static class Bom
+    {
+        private final String artifactId;
+        private final String[] versions;
+        private final Map<Module, String> managed = new LinkedHashMap<Module, String>();
+
+        private Bom( String artifactId, String[] versions )
+        {
+            this.artifactId = artifactId;
+            this.versions = versions;
+        }
+    }
+
+    private static class Project
+    {
+        private final String groupId;
+        private final String name;
+        private final Organisation organisation;
+        private String[] versions;
+        private final List<Module> modules = new ArrayList<Module>();
+        private Bom bom;
+
+        private Project( String groupId, String name, Organisation organisation, String[] versions )
+        {
+            this.groupId = groupId;
+            this.name = name;
+            this.organisation = organisation;
+            this.versions = versions;
+        }
+    }
+
+    private static class Module
+    {
+        private final Project project;
+        private final String artifactId;
+
+        private Module( Project project, String artifactId )
+        {
+            this.project = project;
+            this.artifactId = artifactId;
+        }
+    }
+}
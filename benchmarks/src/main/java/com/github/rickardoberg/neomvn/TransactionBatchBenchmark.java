@@ -0,0 +1,84 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.kernel.impl.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole import of a synthetic repository into a new store through {@link TransactionalGraphWriter}, for a range of
+ * operations per transaction. A version here is about 20 operations and its dependencies about 30, so the smallest
+ * batch commits every few dozen POMs. Committing early for heap is turned off, so only the batch size varies. Each
+ * iteration starts with an empty store, and the score is the time per POM.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class TransactionBatchBenchmark
+{
+    private static final int POMS = 20000;
+
+    @Param( {"1000", "10000", "30000", "100000"} )
+    public int batchSize;
+
+    private List<PomRecord> records;
+    private File dbPath;
+    private TransactionalGraphWriter writer;
+
+    @Setup( Level.Trial )
+    public void records()
+    {
+        records = BenchmarkRepository.records( POMS, 10 );
+    }
+
+    @Setup( Level.Iteration )
+    public void setup() throws IOException
+    {
+        dbPath = File.createTempFile( "neomvn-benchmark-db", "" );
+        dbPath.delete();
+        writer = new TransactionalGraphWriter( dbPath, new ImportMetrics(), batchSize, 0 );
+    }
+
+    @TearDown( Level.Iteration )
+    public void tearDown() throws IOException
+    {
+        writer.shutdown();
+        FileUtils.deleteRecursively( dbPath );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( POMS )
+    public void importPoms()
+    {
+        for ( PomRecord record : records )
+        {
+            writer.version( record );
+            writer.batch();
+        }
+        for ( PomRecord record : records )
+        {
+            writer.dependencies( record );
+            writer.batch();
+        }
+        writer.finish();
+    }
+}
@@ -0,0 +1,228 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.index.lucene.unsafe.batchinsert.LuceneBatchInserterIndexProvider;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndex;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndexProvider;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a fresh store with a {@link BatchInserter}, without transactions or a transaction log. Nodes, relationships,
+ * properties and the groups/artifacts/versions index entries are the same as those written by
+ * {@link TransactionalGraphWriter}, so the resulting store answers the same queries. Nodes are looked up in a
+ * {@link NodeIdDictionary}, since nothing can be read back from the batch indexes without flushing them.
+ * <p>
+ * With the compact model, see {@link CompactModel}, coordinates are only stored on the node they belong to and only
+ * the index entries that queries start from are added.
+ * <p>
+ * The versions of each artifact are kept until {@link #finish()}, which orders them with {@link VersionOrder}.
+ * <p>
+ * Nothing is durable until {@link #shutdown()}, and a store that was not shut down cleanly is unusable. There are no
+ * commits to time, so {@link ImportMetrics} only gets node lookups and relationship creation.
+ */
+public class BatchGraphWriter
+    implements GraphWriter
+{
+    private final BatchInserter inserter;
+    private final BatchInserterIndexProvider indexProvider;
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final BatchInserterIndex groups;
+    private final BatchInserterIndex artifacts;
+    private final BatchInserterIndex versions;
+    private final DynamicRelationshipType has_artifact;
+    private final DynamicRelationshipType has_version;
+    private final DynamicRelationshipType has_dependency;
+    private final DynamicRelationshipType latest_version = DynamicRelationshipType.withName( "LATEST_VERSION" );
+    private final DynamicRelationshipType latest_release = DynamicRelationshipType.withName( "LATEST_RELEASE" );
+
+    private final NodeIdDictionary ids = new NodeIdDictionary();
+    private final VersionCatalog catalog = new VersionCatalog();
+    private final ImportMetrics metrics;
+    private final Map<Long, VersionOrder> versionOrders = new HashMap<Long, VersionOrder>();
+    private final boolean compact;
+
+    public BatchGraphWriter( File dbPath )
+    {
+        this( dbPath, new ImportMetrics() );
+    }
+
+    public BatchGraphWriter( File dbPath, ImportMetrics metrics )
+    {
+        this( dbPath, metrics, false );
+    }
+
+    /**
+     * @param compact write the compact model
+     */
+    public BatchGraphWriter( File dbPath, ImportMetrics metrics, boolean compact )
+    {
+        this.metrics = metrics;
+        this.compact = compact;
+        inserter = BatchInserters.inserter( dbPath.getAbsolutePath() );
+        indexProvider = new LuceneBatchInserterIndexProvider( inserter );
+        groups = indexProvider.nodeIndex( "groups", MapUtil.stringMap( "type", "exact" ) );
+        artifacts = indexProvider.nodeIndex( "artifacts", MapUtil.stringMap( "type", "exact" ) );
+        versions = indexProvider.nodeIndex( "versions", MapUtil.stringMap( "type", "exact" ) );
+
+        has_artifact = DynamicRelationshipType.withName( "HAS_ARTIFACT" );
+        has_version = DynamicRelationshipType.withName( "HAS_VERSION" );
+        has_dependency = DynamicRelationshipType.withName( "HAS_DEPENDENCY" );
+    }
+
+    public void version( PomRecord pom )
+    {
+        long start = System.nanoTime();
+        long versionNode = ids.version( pom.groupId, pom.artifactId, pom.version );
+        metrics.lookup.recordSince( start );
+        catalog.add( pom.groupId, pom.artifactId, pom.version );
+        if ( versionNode == NodeIdDictionary.NONE )
+        {
+            artifact( pom.groupId, pom.artifactId, pom.version, pom.name, false );
+            return;
+        }
+
+        // Already there from another POM with the same coordinates, such as a timestamped SNAPSHOT
+        if ( !compact )
+        {
+            inserter.setNodeProperty( versionNode, "name", pom.name );
+            versions.updateOrAdd( versionNode, versionIndexProperties( pom.groupId, pom.artifactId, pom.version,
+                    inserter.getNodeProperties( versionNode ) ) );
+        }
+        inserter.setNodeProperty( ids.artifact( pom.groupId, pom.artifactId ), "name", pom.name );
+    }
+
+    public void dependencies( PomRecord pom )
+    {
+        long versionNode = version( pom.groupId, pom.artifactId, pom.version );
+        for ( PomRecord.DependencyRecord dependency : pom.dependencies )
+        {
+            String version = catalog.resolve( dependency.groupId, dependency.artifactId, dependency.version );
+            long dependencyVersionNode = version( dependency.groupId, dependency.artifactId, version );
+
+            long start = System.nanoTime();
+            Map<String, Object> properties = MapUtil.map(
+                    "scope", Main.withDefault( dependency.scope, "compile" ),
+                    "optional", dependency.optional );
+            if ( VersionRange.isRange( dependency.version ) )
+                properties.put( "versionRange", dependency.version );
+            inserter.createRelationship( versionNode, dependencyVersionNode, has_dependency, properties );
+            metrics.relationship.recordSince( start );
+        }
+    }
+
+    public void batch()
+    {
+    }
+
+    public void finish()
+    {
+        logger.info( "Node id dictionary: {}", ids );
+        logger.info( "Version catalog: {}", catalog );
+
+        long start = System.currentTimeMillis();
+        for ( Map.Entry<Long, VersionOrder> entry : versionOrders.entrySet() )
+        {
+            VersionOrder order = entry.getValue();
+            for ( int i = 0; i < order.size(); i++ )
+            {
+                inserter.setNodeProperty( order.getNode( i ), "versionOrder", i );
+            }
+            if ( order.getLatest() != VersionOrder.NONE )
+                inserter.createRelationship( entry.getKey(), order.getLatest(), latest_version, null );
+            if ( order.getLatestRelease() != VersionOrder.NONE )
+                inserter.createRelationship( entry.getKey(), order.getLatestRelease(), latest_release, null );
+        }
+        logger.info( "Ordered the versions of {} artifacts in {} ms", versionOrders.size(),
+                System.currentTimeMillis() - start );
+        versionOrders.clear();
+    }
+
+    public void shutdown()
+    {
+        indexProvider.shutdown();
+        inserter.shutdown();
+    }
+
+    private long artifact( String groupId, String artifactId, String version, String name, boolean missing )
+    {
+        logger.debug( "{} {} {}", groupId, artifactId, version );
+
+        long start = System.nanoTime();
+        long groupIdNode = ids.group( groupId );
+        metrics.lookup.recordSince( start );
+        if ( groupIdNode == NodeIdDictionary.NONE )
+        {
+            Map<String, Object> properties = MapUtil.map( "groupId", groupId );
+            groupIdNode = inserter.createNode( properties );
+            groups.add( groupIdNode, properties );
+            ids.group( groupId, groupIdNode );
+        }
+
+        start = System.nanoTime();
+        long artifactIdNode = ids.artifact( groupId, artifactId );
+        metrics.lookup.recordSince( start );
+        boolean newArtifact = artifactIdNode == NodeIdDictionary.NONE;
+        if ( newArtifact )
+        {
+            Map<String, Object> properties = compact ? MapUtil.map( "artifactId", artifactId )
+                    : MapUtil.map( "groupId", groupId, "artifactId", artifactId );
+            artifactIdNode = inserter.createNode( properties );
+            artifacts.add( artifactIdNode, properties );
+            ids.artifact( groupId, artifactId, artifactIdNode );
+        }
+
+        Map<String, Object> properties = compact ? MapUtil.map( "version", version )
+                : MapUtil.map( "groupId", groupId, "artifactId", artifactId, "version", version, "name", name );
+        long versionNode = inserter.createNode( properties );
+        inserter.setNodeProperty( artifactIdNode, "name", name );
+        versions.add( versionNode, versionIndexProperties( groupId, artifactId, version, properties ) );
+
+        ids.version( groupId, artifactId, version, versionNode );
+
+        if ( newArtifact )
+        {
+            inserter.createRelationship( groupIdNode, artifactIdNode, has_artifact, null );
+        }
+
+        inserter.createRelationship( artifactIdNode, versionNode, has_version, null );
+
+        VersionOrder order = versionOrders.get( artifactIdNode );
+        if ( order == null )
+            versionOrders.put( artifactIdNode, order = new VersionOrder() );
+        order.add( versionNode, version, missing );
+
+        return versionNode;
+    }
+
+    private Map<String, Object> versionIndexProperties( String groupId, String artifactId, String version,
+                                                        Map<String, Object> properties )
+    {
+        Map<String, Object> indexProperties = compact ? new HashMap<String, Object>()
+                : new HashMap<String, Object>( properties );
+        indexProperties.put( "gav", NodeIdDictionary.gav( groupId, artifactId, version ) );
+        return indexProperties;
+    }
+
+    private long version( String groupId, String artifactId, String version )
+    {
+        long start = System.nanoTime();
+        long versionNode = ids.version( groupId, artifactId, version );
+        metrics.lookup.recordSince( start );
+        if ( versionNode != NodeIdDictionary.NONE )
+            return versionNode;
+
+        // Broken lookup - create fake node and mark as missing
+        long fakeNode = artifact( groupId, artifactId, version, artifactId, true );
+        inserter.setNodeProperty( fakeNode, "missing", true );
+        metrics.missing();
+        return fakeNode;
+    }
+}
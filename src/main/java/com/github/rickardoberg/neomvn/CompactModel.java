@@ -0,0 +1,76 @@
+package com.github.rickardoberg.neomvn;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * Reads coordinates from group, artifact and version nodes in either model. In the full model every node has the
+ * coordinates of its own level and those above it as properties. In the compact model, written with "--compact",
+ * each coordinate is only stored on the node it belongs to: "groupId" on the group, "artifactId" and "name" on the
+ * artifact and "version" on the version, and the rest is found by following HAS_VERSION and HAS_ARTIFACT back up.
+ * Only the index entries that queries start from are written: "groupId" in groups, "artifactId" in artifacts and
+ * "gav" in versions.
+ * <p/>
+ * The same works in Cypher, by matching the path up from a version instead of reading its properties:
+ * <pre>
+ * start version=node:versions(gav='junit:junit:4.11')
+ * match group-[:HAS_ARTIFACT]->artifact-[:HAS_VERSION]->version
+ * return group.groupId, artifact.artifactId, version.version
+ * </pre>
+ */
+public class CompactModel
+{
+    private static final DynamicRelationshipType has_artifact = DynamicRelationshipType.withName( "HAS_ARTIFACT" );
+    private static final DynamicRelationshipType has_version = DynamicRelationshipType.withName( "HAS_VERSION" );
+
+    private CompactModel()
+    {
+    }
+
+    /**
+     * @return true if the node is a version or artifact node without its groupId, as written by the compact model
+     */
+    public static boolean isCompact( Node node )
+    {
+        return (node.hasProperty( "version" ) || node.hasProperty( "artifactId" )) && !node.hasProperty( "groupId" );
+    }
+
+    /**
+     * @param node a group, artifact or version node
+     */
+    public static String getGroupId( Node node )
+    {
+        if ( node.hasProperty( "groupId" ) )
+            return (String) node.getProperty( "groupId" );
+        return getGroupId( parent( node, node.hasProperty( "version" ) ? has_version : has_artifact ) );
+    }
+
+    /**
+     * @param node an artifact or version node
+     */
+    public static String getArtifactId( Node node )
+    {
+        if ( node.hasProperty( "artifactId" ) )
+            return (String) node.getProperty( "artifactId" );
+        return getArtifactId( parent( node, has_version ) );
+    }
+
+    /**
+     * @return "groupId:artifactId:version" of a version node, as in the "gav" key of the versions index
+     */
+    public static String getGav( Node versionNode )
+    {
+        return NodeIdDictionary.gav( getGroupId( versionNode ), getArtifactId( versionNode ),
+                (String) versionNode.getProperty( "version" ) );
+    }
+
+    private static Node parent( Node node, DynamicRelationshipType type )
+    {
+        Relationship relationship = node.getSingleRelationship( type, Direction.INCOMING );
+        if ( relationship == null )
+            throw new IllegalStateException( "No " + type.name() + " to " + node );
+        return relationship.getStartNode();
+    }
+}
@@ -0,0 +1,253 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only record of a {@link Downloader} crawl, so an interrupted crawl can pick up where it stopped. Each line
+ * is an event, a timestamp and a key, separated by tabs. Keys are URLs for directory listings and local paths for
+ * POMs.
+ * <p/>
+ * Events are written in an order that makes replay safe: whatever a listing or POM led to is recorded before the
+ * listing is recorded as {@link Event#LISTED} or the POM as {@link Event#EXPANDED}. Anything queued but not done when
+ * the crawl stopped is pending, and is the place to resume from.
+ * <p/>
+ * POMs that no repository has are recorded as {@link Event#MISSING}, and are not requested again until the TTL
+ * runs out. This negative cache outlives finished crawls: when a new crawl starts, the journal is rewritten with just
+ * the missing POMs that are still within their TTL.
+ */
+public class CrawlJournal
+    implements Closeable
+{
+    public static final String FILE_NAME = "crawl-journal.txt";
+
+    public enum Event
+    {
+        LISTING, LISTED, DISCOVERED, DOWNLOADED, EXPANDED, FAILED, MISSING, COMPLETE
+    }
+
+    private final File file;
+    private final long missingTtl;
+
+    private final Set<String> pendingListings = new LinkedHashSet<String>();
+    private final Set<String> pendingPoms = new LinkedHashSet<String>();
+    private final Set<String> expanded = new LinkedHashSet<String>();
+    private final Map<String, Long> missing = new HashMap<String, Long>();
+    private boolean started;
+    private boolean complete;
+
+    private Writer out;
+
+    /**
+     * Replay an existing journal, if there is one, and open it for appending.
+     *
+     * @param missingTtl milliseconds a missing POM is remembered
+     */
+    public CrawlJournal( File file, long missingTtl ) throws IOException
+    {
+        this.file = file;
+        this.missingTtl = missingTtl;
+
+        boolean tornLine = false;
+        if ( file.exists() )
+            tornLine = replay();
+        out = open();
+        // Do not glue the first new event onto a line that was cut short
+        if ( tornLine )
+            out.write( '\n' );
+    }
+
+    /**
+     * @return true if an earlier crawl was started but did not finish
+     */
+    public boolean isResumable()
+    {
+        return started && !complete;
+    }
+
+    public Collection<String> getPendingListings()
+    {
+        return pendingListings;
+    }
+
+    public Collection<String> getPendingPoms()
+    {
+        return pendingPoms;
+    }
+
+    public Collection<String> getExpanded()
+    {
+        return expanded;
+    }
+
+    /**
+     * Forget the previous crawl, keeping only the missing POMs that are still within their TTL.
+     */
+    public synchronized void restart() throws IOException
+    {
+        out.close();
+        pendingListings.clear();
+        pendingPoms.clear();
+        expanded.clear();
+        started = false;
+        complete = false;
+
+        File tmp = new File( file.getPath() + ".tmp" );
+        Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( tmp ), "UTF-8" ) );
+        try
+        {
+            long now = System.currentTimeMillis();
+            for ( Map.Entry<String, Long> entry : missing.entrySet() )
+            {
+                if ( now - entry.getValue() < missingTtl )
+                    write( writer, Event.MISSING, entry.getValue(), entry.getKey() );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+        file.delete();
+        if ( !tmp.renameTo( file ) )
+            throw new IOException( "Could not replace " + file );
+
+        out = open();
+    }
+
+    public synchronized boolean isMissing( File pom )
+    {
+        Long since = missing.get( pom.getAbsolutePath() );
+        return since != null && System.currentTimeMillis() - since < missingTtl;
+    }
+
+    public void missing( File pom ) throws IOException
+    {
+        record( Event.MISSING, pom.getAbsolutePath() );
+    }
+
+    public synchronized void record( Event event, String key ) throws IOException
+    {
+        long now = System.currentTimeMillis();
+        apply( event, now, key );
+        write( out, event, now, key );
+        // Flush every event, a crawl is killed rather than shut down
+        out.flush();
+    }
+
+    public synchronized void close() throws IOException
+    {
+        out.close();
+    }
+
+    /**
+     * @return true if the journal does not end with a complete line
+     */
+    private boolean replay() throws IOException
+    {
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+        try
+        {
+            String line;
+            String last = null;
+            while ( (line = reader.readLine()) != null )
+            {
+                last = line;
+                String[] fields = line.split( "\t", 3 );
+                // The last line may be torn if the crawl was killed while writing it
+                if ( fields.length < 3 )
+                    continue;
+                try
+                {
+                    apply( Event.valueOf( fields[0] ), Long.parseLong( fields[1] ), fields[2] );
+                }
+                catch ( IllegalArgumentException e )
+                {
+                    // Torn line
+                }
+            }
+            return last != null && !endsWithNewline();
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private void apply( Event event, long time, String key )
+    {
+        switch ( event )
+        {
+            case LISTING:
+                started = true;
+                pendingListings.add( key );
+                break;
+            case LISTED:
+                pendingListings.remove( key );
+                break;
+            case DISCOVERED:
+                started = true;
+                if ( !expanded.contains( key ) )
+                    pendingPoms.add( key );
+                break;
+            case EXPANDED:
+                pendingPoms.remove( key );
+                expanded.add( key );
+                break;
+            case MISSING:
+                pendingPoms.remove( key );
+                missing.put( key, time );
+                break;
+            case COMPLETE:
+                complete = true;
+                break;
+            default:
+                // Downloads and failures are informational, a failed POM stays pending and is tried again
+                break;
+        }
+    }
+
+    private boolean endsWithNewline() throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try
+        {
+            if ( raf.length() == 0 )
+                return true;
+            raf.seek( raf.length() - 1 );
+            return raf.read() == '\n';
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    private Writer open() throws IOException
+    {
+        return new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file, true ), "UTF-8" ) );
+    }
+
+    private static void write( Writer writer, Event event, long time, String key ) throws IOException
+    {
+        writer.write( event.name() );
+        writer.write( '\t' );
+        writer.write( Long.toString( time ) );
+        writer.write( '\t' );
+        writer.write( key );
+        writer.write( '\n' );
+    }
+}
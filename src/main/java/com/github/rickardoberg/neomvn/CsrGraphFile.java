@@ -0,0 +1,214 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * The group, artifact and version nodes and HAS_* relationships of a graph in compressed sparse row form, as written
+ * by {@link GraphExport}, read through a {@link MappedFile} so that only what is looked at is paged in.
+ * <p/>
+ * Nodes are numbered densely from 0, and each has a fixed size record with its kind, a missing flag and the
+ * coordinates as string ids. Numbers that are not in use have kind {@link #NONE}. The relationships of node n are
+ * records from offset n up to offset n + 1, each with the end node, type, optional flag and the scope and version
+ * range as string ids. Strings are stored once each, as UTF-8 after a table of their offsets, and string 0 is the
+ * empty string, which stands for a missing property.
+ * <p/>
+ * The file starts with a header of a magic number, the format version, the number of nodes, relationships and
+ * strings, and the offsets of the string table, string bytes, node records, relationship offsets and relationship
+ * records. All values are big-endian.
+ */
+public class CsrGraphFile
+    implements Closeable
+{
+    public static final String FILE_NAME = "graph.csr";
+
+    public static final int NONE = 0;
+    public static final int GROUP = 1;
+    public static final int ARTIFACT = 2;
+    public static final int VERSION = 3;
+
+    public static final int HAS_ARTIFACT = 1;
+    public static final int HAS_VERSION = 2;
+    public static final int HAS_DEPENDENCY = 3;
+
+    static final int MAGIC = 0x4e4d4347;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 8 + 8 * 8;
+    static final int NODE_SIZE = 20;
+    static final int RELATIONSHIP_SIZE = 16;
+
+    static final int MISSING = 1;
+    static final int OPTIONAL = 1;
+
+    static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private static final String[] LABELS = {null, "Group", "Artifact", "Version"};
+    private static final String[] TYPES = {null, "HAS_ARTIFACT", "HAS_VERSION", "HAS_DEPENDENCY"};
+
+    private final MappedFile file;
+    private final long nodes;
+    private final long relationships;
+    private final long strings;
+    private final long stringOffsetsAt;
+    private final long stringBytesAt;
+    private final long nodesAt;
+    private final long offsetsAt;
+    private final long relationshipsAt;
+
+    /**
+     * @return the label of a node kind in the CSV export, such as "Version"
+     */
+    public static String label( int kind )
+    {
+        return LABELS[kind];
+    }
+
+    /**
+     * @return the name of a relationship type, such as "HAS_DEPENDENCY"
+     */
+    public static String type( int type )
+    {
+        return TYPES[type];
+    }
+
+    public CsrGraphFile( File file ) throws IOException
+    {
+        this.file = new MappedFile( file, false );
+        try
+        {
+            if ( this.file.length() < HEADER_SIZE || this.file.getInt() != MAGIC )
+                throw new IOException( "Not a graph export: " + file );
+            if ( this.file.getInt() != FORMAT_VERSION )
+                throw new IOException( "Unknown graph export format in " + file );
+            nodes = this.file.getLong();
+            relationships = this.file.getLong();
+            strings = this.file.getLong();
+            stringOffsetsAt = this.file.getLong();
+            stringBytesAt = this.file.getLong();
+            nodesAt = this.file.getLong();
+            offsetsAt = this.file.getLong();
+            relationshipsAt = this.file.getLong();
+        }
+        catch ( IOException e )
+        {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    public long getNodeCount()
+    {
+        return nodes;
+    }
+
+    public long getRelationshipCount()
+    {
+        return relationships;
+    }
+
+    public long getStringCount()
+    {
+        return strings;
+    }
+
+    public String getString( int string ) throws IOException
+    {
+        byte[] bytes = new byte[getStringLength( string )];
+        getStringBytes( string, bytes );
+        return new String( bytes, UTF_8 );
+    }
+
+    /**
+     * @return the length of a string in UTF-8 bytes
+     */
+    int getStringLength( int string ) throws IOException
+    {
+        return (int) (file.getLong( stringOffsetsAt + string * 8L + 8 ) - file.getLong( stringOffsetsAt + string * 8L ));
+    }
+
+    /**
+     * Read the UTF-8 bytes of a string into the start of an array of at least its length.
+     */
+    void getStringBytes( int string, byte[] bytes ) throws IOException
+    {
+        file.get( stringBytesAt + file.getLong( stringOffsetsAt + string * 8L ), bytes, 0, getStringLength( string ) );
+    }
+
+    public int getKind( long node ) throws IOException
+    {
+        return file.getByte( nodesAt + node * NODE_SIZE );
+    }
+
+    public boolean isMissing( long node ) throws IOException
+    {
+        return (file.getByte( nodesAt + node * NODE_SIZE + 1 ) & MISSING) != 0;
+    }
+
+    public int getGroupId( long node ) throws IOException
+    {
+        return file.getInt( nodesAt + node * NODE_SIZE + 4 );
+    }
+
+    public int getArtifactId( long node ) throws IOException
+    {
+        return file.getInt( nodesAt + node * NODE_SIZE + 8 );
+    }
+
+    public int getVersion( long node ) throws IOException
+    {
+        return file.getInt( nodesAt + node * NODE_SIZE + 12 );
+    }
+
+    public int getName( long node ) throws IOException
+    {
+        return file.getInt( nodesAt + node * NODE_SIZE + 16 );
+    }
+
+    /**
+     * @return the first relationship of a node
+     */
+    public long getFirstRelationship( long node ) throws IOException
+    {
+        return file.getLong( offsetsAt + node * 8 );
+    }
+
+    /**
+     * @return the relationship after the last one of a node, which is the first one of the next node
+     */
+    public long getEndRelationship( long node ) throws IOException
+    {
+        return file.getLong( offsetsAt + node * 8 + 8 );
+    }
+
+    public long getEndNode( long relationship ) throws IOException
+    {
+        return file.getInt( relationshipsAt + relationship * RELATIONSHIP_SIZE ) & 0xFFFFFFFFL;
+    }
+
+    public int getType( long relationship ) throws IOException
+    {
+        return file.getByte( relationshipsAt + relationship * RELATIONSHIP_SIZE + 4 );
+    }
+
+    public boolean isOptional( long relationship ) throws IOException
+    {
+        return (file.getByte( relationshipsAt + relationship * RELATIONSHIP_SIZE + 5 ) & OPTIONAL) != 0;
+    }
+
+    public int getScope( long relationship ) throws IOException
+    {
+        return file.getInt( relationshipsAt + relationship * RELATIONSHIP_SIZE + 8 );
+    }
+
+    public int getVersionRange( long relationship ) throws IOException
+    {
+        return file.getInt( relationshipsAt + relationship * RELATIONSHIP_SIZE + 12 );
+    }
+
+    public void close() throws IOException
+    {
+        file.close();
+    }
+}
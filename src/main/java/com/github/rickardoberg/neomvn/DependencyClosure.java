@@ -0,0 +1,605 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes the transitive dependency closure of every version node after an import, so that transitive queries do
+ * not have to walk HAS_DEPENDENCY paths. Dependencies in excluded scopes, "test" by default, are left out, both as
+ * dependencies and as paths to further dependencies.
+ * <p/>
+ * Cycles are collapsed into their strongly connected components first, found with Tarjan's algorithm, which also
+ * numbers the components so that every component comes after the components it depends on. The closure of a
+ * component is then the union of the components it depends on and their closures. Components are grouped in levels
+ * by their longest path to a component without dependencies, and the components of a level are computed in parallel.
+ * Every version in a cycle depends on every other version in it, at depth 1.
+ * <p/>
+ * The depth of a dependency is the shortest number of HAS_DEPENDENCY hops to it, where a cycle counts as one hop.
+ * <p/>
+ * The closure is written to {@link DependencyClosureFile#FILE_NAME} in the database directory, and optionally as
+ * TRANSITIVELY_DEPENDS_ON relationships with a "depth" property, which replace any from an earlier run.
+ */
+public class DependencyClosure
+{
+    public static final Set<String> DEFAULT_EXCLUDED_SCOPES = Collections.singleton( "test" );
+
+    private static final int BATCH_SIZE = 10000;
+
+    private static final DynamicRelationshipType has_dependency = DynamicRelationshipType.withName( "HAS_DEPENDENCY" );
+    private static final DynamicRelationshipType transitively_depends_on = DynamicRelationshipType.withName( "TRANSITIVELY_DEPENDS_ON" );
+
+    public static void main( String[] args ) throws IOException
+    {
+        ImportOptions options = new ImportOptions();
+        if ( args.length == 1 )
+            options.database = new File( args[0] );
+        run( options );
+    }
+
+    /**
+     * Compute the closure for the database in the options, with their excluded scopes and threads.
+     */
+    public static void run( ImportOptions options ) throws IOException
+    {
+        File dbPath = options.database;
+        if ( !dbPath.isDirectory() )
+            throw new IllegalArgumentException( "No database at " + dbPath.getAbsolutePath() );
+
+        GraphDatabaseService graphDatabaseService = new GraphDatabaseFactory().newEmbeddedDatabase( dbPath.getAbsolutePath() );
+        try
+        {
+            DependencyClosure closure = new DependencyClosure( graphDatabaseService, options.closureExcludedScopes,
+                    options.threads );
+            closure.compute();
+            closure.write( new File( dbPath, DependencyClosureFile.FILE_NAME ) );
+            if ( options.closureRelationships )
+                closure.createRelationships();
+        }
+        finally
+        {
+            graphDatabaseService.shutdown();
+        }
+    }
+
+    private final GraphDatabaseService graphDatabaseService;
+    private final Set<String> excludedScopes;
+    private final int threads;
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    // Version nodes, by node id, and dependencies between them as offsets into targets, by version
+    private long[] nodeIds;
+    private int[] offsets;
+    private int[] targets;
+
+    // Strongly connected components, by version, and the versions of each component
+    private int[] component;
+    private int[] memberOffsets;
+    private int[] members;
+    private boolean[] cyclic;
+
+    // Closure of each component as sorted component << 32 | depth
+    private long[][] closures;
+
+    private Transaction tx;
+    private int written;
+
+    public DependencyClosure( GraphDatabaseService graphDatabaseService, Set<String> excludedScopes, int threads )
+    {
+        this.graphDatabaseService = graphDatabaseService;
+        this.excludedScopes = new HashSet<String>( excludedScopes );
+        this.threads = Math.max( 1, threads );
+    }
+
+    public void compute()
+    {
+        long start = System.currentTimeMillis();
+        load();
+        components();
+        int levels = closures();
+
+        long entries = 0;
+        for ( int version = 0; version < nodeIds.length; version++ )
+        {
+            entries += size( version );
+        }
+        logger.info( "Dependency closure of {} versions, {} dependencies: {} components, {} levels, {} transitive dependencies in {} ms",
+                nodeIds.length, targets.length, closures.length, levels, entries, System.currentTimeMillis() - start );
+    }
+
+    /**
+     * Visit the transitive dependencies of each version, in ascending node id order. Dependencies are sorted by node
+     * id, and the arrays are only valid during the call.
+     */
+    public void visit( DependencyClosureFile.Visitor visitor ) throws IOException
+    {
+        long[] dependencies = new long[16];
+        int[] depths = new int[16];
+        for ( int version = 0; version < nodeIds.length; version++ )
+        {
+            int size = size( version );
+            if ( dependencies.length < size )
+            {
+                dependencies = new long[size];
+                depths = new int[size];
+            }
+
+            long[] entries = expand( version );
+            for ( int i = 0; i < entries.length; i++ )
+            {
+                dependencies[i] = nodeIds[(int) (entries[i] >>> 32)];
+                depths[i] = (int) entries[i];
+            }
+            visitor.visit( nodeIds[version], size, dependencies, depths );
+        }
+    }
+
+    public void write( File file ) throws IOException
+    {
+        DependencyClosureFile.Writer writer = new DependencyClosureFile.Writer( file, excludedScopes, nodeIds.length );
+        try
+        {
+            visit( writer );
+        }
+        finally
+        {
+            writer.close();
+        }
+        logger.info( "Wrote dependency closure to {}, {} KB", file, file.length() >> 10 );
+    }
+
+    /**
+     * Replace all TRANSITIVELY_DEPENDS_ON relationships with the closure.
+     */
+    public void createRelationships() throws IOException
+    {
+        tx = graphDatabaseService.beginTx();
+        try
+        {
+            written = 0;
+            for ( Relationship relationship : GlobalGraphOperations.at( graphDatabaseService ).getAllRelationships() )
+            {
+                if ( relationship.isType( transitively_depends_on ) )
+                {
+                    relationship.delete();
+                    batch();
+                }
+            }
+            if ( written > 0 )
+                logger.info( "Removed {} TRANSITIVELY_DEPENDS_ON relationships", written );
+
+            written = 0;
+            visit( new DependencyClosureFile.Visitor()
+            {
+                public void visit( long version, int size, long[] dependencies, int[] depths )
+                {
+                    Node versionNode = graphDatabaseService.getNodeById( version );
+                    for ( int i = 0; i < size; i++ )
+                    {
+                        Relationship relationship = versionNode.createRelationshipTo(
+                                graphDatabaseService.getNodeById( dependencies[i] ), transitively_depends_on );
+                        relationship.setProperty( "depth", depths[i] );
+                        batch();
+                    }
+                }
+            } );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        logger.info( "Created {} TRANSITIVELY_DEPENDS_ON relationships", written );
+    }
+
+    private void batch()
+    {
+        if ( ++written % BATCH_SIZE == 0 )
+        {
+            tx.success();
+            tx.finish();
+            tx = graphDatabaseService.beginTx();
+        }
+    }
+
+    /**
+     * Read the version nodes and the dependencies between them that are not in an excluded scope.
+     */
+    private void load()
+    {
+        LongList versions = new LongList();
+        for ( Node node : GlobalGraphOperations.at( graphDatabaseService ).getAllNodes() )
+        {
+            if ( node.hasProperty( "version" ) )
+                versions.add( node.getId() );
+        }
+        nodeIds = versions.toArray();
+        Arrays.sort( nodeIds );
+
+        offsets = new int[nodeIds.length + 1];
+        IntList dependencies = new IntList();
+        for ( int version = 0; version < nodeIds.length; version++ )
+        {
+            Node node = graphDatabaseService.getNodeById( nodeIds[version] );
+            for ( Relationship dependency : node.getRelationships( has_dependency, Direction.OUTGOING ) )
+            {
+                if ( excludedScopes.contains( dependency.getProperty( "scope", "compile" ) ) )
+                    continue;
+                int target = Arrays.binarySearch( nodeIds, dependency.getEndNode().getId() );
+                if ( target >= 0 )
+                    dependencies.add( target );
+            }
+            offsets[version + 1] = dependencies.size();
+        }
+        targets = dependencies.toArray();
+    }
+
+    /**
+     * Tarjan's algorithm, without recursion since dependency chains can be long. Components are numbered in the
+     * order they are completed, which is after every component they depend on.
+     */
+    private void components()
+    {
+        int count = nodeIds.length;
+        int[] index = new int[count];
+        int[] low = new int[count];
+        int[] next = new int[count];
+        boolean[] onStack = new boolean[count];
+        int[] stack = new int[count];
+        int[] calls = new int[count];
+        Arrays.fill( index, -1 );
+        component = new int[count];
+
+        int counter = 0;
+        int stackSize = 0;
+        int components = 0;
+        for ( int root = 0; root < count; root++ )
+        {
+            if ( index[root] != -1 )
+                continue;
+
+            int top = 0;
+            calls[0] = root;
+            index[root] = low[root] = counter++;
+            next[root] = offsets[root];
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            while ( top >= 0 )
+            {
+                int version = calls[top];
+                if ( next[version] < offsets[version + 1] )
+                {
+                    int dependency = targets[next[version]++];
+                    if ( index[dependency] == -1 )
+                    {
+                        index[dependency] = low[dependency] = counter++;
+                        next[dependency] = offsets[dependency];
+                        stack[stackSize++] = dependency;
+                        onStack[dependency] = true;
+                        calls[++top] = dependency;
+                    }
+                    else if ( onStack[dependency] )
+                    {
+                        low[version] = Math.min( low[version], index[dependency] );
+                    }
+                }
+                else
+                {
+                    if ( low[version] == index[version] )
+                    {
+                        int member;
+                        do
+                        {
+                            member = stack[--stackSize];
+                            onStack[member] = false;
+                            component[member] = components;
+                        }
+                        while ( member != version );
+                        components++;
+                    }
+                    top--;
+                    if ( top >= 0 )
+                        low[calls[top]] = Math.min( low[calls[top]], low[version] );
+                }
+            }
+        }
+
+        // Versions by component
+        memberOffsets = new int[components + 1];
+        for ( int version = 0; version < count; version++ )
+        {
+            memberOffsets[component[version] + 1]++;
+        }
+        for ( int i = 0; i < components; i++ )
+        {
+            memberOffsets[i + 1] += memberOffsets[i];
+        }
+        members = new int[count];
+        int[] position = Arrays.copyOf( memberOffsets, components );
+        cyclic = new boolean[components];
+        for ( int version = 0; version < count; version++ )
+        {
+            members[position[component[version]]++] = version;
+            for ( int i = offsets[version]; i < offsets[version + 1]; i++ )
+            {
+                if ( component[targets[i]] == component[version] )
+                    cyclic[component[version]] = true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of levels
+     */
+    private int closures()
+    {
+        final int components = memberOffsets.length - 1;
+        closures = new long[components][];
+
+        // Level of a component is one more than the highest level of the components it depends on
+        int[] level = new int[components];
+        int levels = 0;
+        for ( int c = 0; c < components; c++ )
+        {
+            for ( int dependency : dependencies( c ) )
+            {
+                level[c] = Math.max( level[c], level[dependency] + 1 );
+            }
+            levels = Math.max( levels, level[c] + 1 );
+        }
+
+        int[] levelOffsets = new int[levels + 1];
+        for ( int c = 0; c < components; c++ )
+        {
+            levelOffsets[level[c] + 1]++;
+        }
+        for ( int i = 0; i < levels; i++ )
+        {
+            levelOffsets[i + 1] += levelOffsets[i];
+        }
+        final int[] byLevel = new int[components];
+        int[] position = Arrays.copyOf( levelOffsets, levels );
+        for ( int c = 0; c < components; c++ )
+        {
+            byLevel[position[level[c]]++] = c;
+        }
+
+        if ( threads == 1 )
+        {
+            Merger merger = new Merger( components );
+            for ( int c : byLevel )
+            {
+                closures[c] = merger.closure( c );
+            }
+            return levels;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            final ThreadLocal<Merger> mergers = new ThreadLocal<Merger>()
+            {
+                @Override
+                protected Merger initialValue()
+                {
+                    return new Merger( components );
+                }
+            };
+            for ( int l = 0; l < levels; l++ )
+            {
+                // Chunks of a level, so small levels do not pay for many tasks
+                final int from = levelOffsets[l];
+                final int to = levelOffsets[l + 1];
+                int chunk = Math.max( 64, (to - from) / (threads * 4) + 1 );
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for ( int i = from; i < to; i += chunk )
+                {
+                    final int chunkFrom = i;
+                    final int chunkTo = Math.min( to, i + chunk );
+                    futures.add( executor.submit( new Runnable()
+                    {
+                        public void run()
+                        {
+                            Merger merger = mergers.get();
+                            for ( int j = chunkFrom; j < chunkTo; j++ )
+                            {
+                                closures[byLevel[j]] = merger.closure( byLevel[j] );
+                            }
+                        }
+                    } ) );
+                }
+                for ( Future<?> future : futures )
+                {
+                    future.get();
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while computing dependency closure", e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new IllegalStateException( "Could not compute dependency closure", e.getCause() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return levels;
+    }
+
+    /**
+     * @return the components a component depends on directly, excluding itself, possibly with duplicates
+     */
+    private int[] dependencies( int c )
+    {
+        IntList dependencies = new IntList();
+        for ( int i = memberOffsets[c]; i < memberOffsets[c + 1]; i++ )
+        {
+            int version = members[i];
+            for ( int j = offsets[version]; j < offsets[version + 1]; j++ )
+            {
+                if ( component[targets[j]] != c )
+                    dependencies.add( component[targets[j]] );
+            }
+        }
+        return dependencies.toArray();
+    }
+
+    private int size( int version )
+    {
+        int c = component[version];
+        int size = cyclic[c] ? memberOffsets[c + 1] - memberOffsets[c] - 1 : 0;
+        for ( long entry : closures[c] )
+        {
+            int dependency = (int) (entry >>> 32);
+            size += memberOffsets[dependency + 1] - memberOffsets[dependency];
+        }
+        return size;
+    }
+
+    /**
+     * @return the closure of a version as sorted version << 32 | depth
+     */
+    private long[] expand( int version )
+    {
+        int c = component[version];
+        long[] entries = new long[size( version )];
+        int size = 0;
+        if ( cyclic[c] )
+        {
+            for ( int i = memberOffsets[c]; i < memberOffsets[c + 1]; i++ )
+            {
+                if ( members[i] != version )
+                    entries[size++] = (long) members[i] << 32 | 1;
+            }
+        }
+        for ( long entry : closures[c] )
+        {
+            int dependency = (int) (entry >>> 32);
+            long depth = entry & 0xFFFFFFFFL;
+            for ( int i = memberOffsets[dependency]; i < memberOffsets[dependency + 1]; i++ )
+            {
+                entries[size++] = (long) members[i] << 32 | depth;
+            }
+        }
+        Arrays.sort( entries );
+        return entries;
+    }
+
+    /**
+     * Merges the closures of the components a component depends on, with scratch space for one thread.
+     */
+    private class Merger
+    {
+        // Shortest depth so far by component, 0 if not reached
+        private final int[] depths;
+        private int[] reached = new int[64];
+
+        private Merger( int components )
+        {
+            depths = new int[components];
+        }
+
+        private long[] closure( int c )
+        {
+            int size = 0;
+            for ( int dependency : dependencies( c ) )
+            {
+                size = reach( dependency, 1, size );
+                for ( long entry : closures[dependency] )
+                {
+                    size = reach( (int) (entry >>> 32), (int) entry + 1, size );
+                }
+            }
+
+            long[] closure = new long[size];
+            for ( int i = 0; i < size; i++ )
+            {
+                closure[i] = (long) reached[i] << 32 | depths[reached[i]];
+                depths[reached[i]] = 0;
+            }
+            Arrays.sort( closure );
+            return closure;
+        }
+
+        private int reach( int dependency, int depth, int size )
+        {
+            if ( depths[dependency] == 0 )
+            {
+                if ( size == reached.length )
+                    reached = Arrays.copyOf( reached, size * 2 );
+                reached[size++] = dependency;
+                depths[dependency] = depth;
+            }
+            else if ( depth < depths[dependency] )
+            {
+                depths[dependency] = depth;
+            }
+            return size;
+        }
+    }
+
+    private static class IntList
+    {
+        private int[] values = new int[1024];
+        private int size;
+
+        private void add( int value )
+        {
+            if ( size == values.length )
+                values = Arrays.copyOf( values, size * 2 );
+            values[size++] = value;
+        }
+
+        private int size()
+        {
+            return size;
+        }
+
+        private int[] toArray()
+        {
+            return Arrays.copyOf( values, size );
+        }
+    }
+
+    private static class LongList
+    {
+        private long[] values = new long[1024];
+        private int size;
+
+        private void add( long value )
+        {
+            if ( size == values.length )
+                values = Arrays.copyOf( values, size * 2 );
+            values[size++] = value;
+        }
+
+        private long[] toArray()
+        {
+            return Arrays.copyOf( values, size );
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The transitive dependencies of each version node, as written by {@link DependencyClosure}. Versions come in
+ * ascending node id order, each with its dependencies sorted by node id. Node ids are stored as varint gaps from the
+ * previous one, so a closure of versions imported close together takes a byte or two per dependency, followed by the
+ * depth of each dependency as a varint.
+ * <p/>
+ * The file starts with a magic number, the excluded scopes separated by commas, and the number of versions.
+ */
+public class DependencyClosureFile
+{
+    public static final String FILE_NAME = "dependency-closure.bin";
+
+    private static final int MAGIC = 0x4e4d4331;
+
+    public interface Visitor
+    {
+        /**
+         * @param size number of dependencies, which may be less than the length of the arrays
+         */
+        void visit( long version, int size, long[] dependencies, int[] depths ) throws IOException;
+    }
+
+    /**
+     * @return the scopes that were left out of the closure in the file
+     */
+    public static Set<String> excludedScopes( File file ) throws IOException
+    {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try
+        {
+            return readHeader( in );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    public static void read( File file, Visitor visitor ) throws IOException
+    {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ), 1 << 16 ) );
+        try
+        {
+            readHeader( in );
+            int versions = in.readInt();
+            long[] dependencies = new long[16];
+            int[] depths = new int[16];
+            long version = 0;
+            for ( int i = 0; i < versions; i++ )
+            {
+                version += readVarLong( in );
+                int size = (int) readVarLong( in );
+                if ( dependencies.length < size )
+                {
+                    dependencies = new long[size];
+                    depths = new int[size];
+                }
+                long dependency = 0;
+                for ( int j = 0; j < size; j++ )
+                {
+                    dependency += readVarLong( in );
+                    dependencies[j] = dependency;
+                }
+                for ( int j = 0; j < size; j++ )
+                {
+                    depths[j] = (int) readVarLong( in );
+                }
+                visitor.visit( version, size, dependencies, depths );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static Set<String> readHeader( DataInputStream in ) throws IOException
+    {
+        if ( in.readInt() != MAGIC )
+            throw new IOException( "Not a dependency closure file" );
+        String scopes = in.readUTF();
+        if ( scopes.isEmpty() )
+            return Collections.emptySet();
+        Set<String> excludedScopes = new HashSet<String>();
+        Collections.addAll( excludedScopes, scopes.split( "," ) );
+        return excludedScopes;
+    }
+
+    private static long readVarLong( DataInputStream in ) throws IOException
+    {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ( (b & 0x80) != 0 );
+        return value;
+    }
+
+    /**
+     * Writes versions given to {@link #visit}, which must come in ascending node id order.
+     */
+    public static class Writer
+        implements Visitor, Closeable
+    {
+        private final DataOutputStream out;
+        private long previous = 0;
+
+        public Writer( File file, Set<String> excludedScopes, int versions ) throws IOException
+        {
+            out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 1 << 16 ) );
+            out.writeInt( MAGIC );
+            StringBuilder scopes = new StringBuilder();
+            for ( String scope : excludedScopes )
+            {
+                scopes.append( scopes.length() == 0 ? "" : "," ).append( scope );
+            }
+            out.writeUTF( scopes.toString() );
+            out.writeInt( versions );
+        }
+
+        public void visit( long version, int size, long[] dependencies, int[] depths ) throws IOException
+        {
+            writeVarLong( version - previous );
+            previous = version;
+            writeVarLong( size );
+            long dependency = 0;
+            for ( int i = 0; i < size; i++ )
+            {
+                writeVarLong( dependencies[i] - dependency );
+                dependency = dependencies[i];
+            }
+            for ( int i = 0; i < size; i++ )
+            {
+                writeVarLong( depths[i] );
+            }
+        }
+
+        public void close() throws IOException
+        {
+            out.close();
+        }
+
+        private void writeVarLong( long value ) throws IOException
+        {
+            while ( (value & ~0x7FL) != 0 )
+            {
+                out.write( (int) (value & 0x7F) | 0x80 );
+                value >>>= 7;
+            }
+            out.write( (int) value );
+        }
+    }
+}
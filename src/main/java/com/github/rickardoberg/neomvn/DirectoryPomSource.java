@@ -0,0 +1,40 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.maven.model.building.FileModelSource;
+
+/**
+ * POMs in a repository directory, found with a {@link RepositoryWalker}.
+ */
+public class DirectoryPomSource
+    implements PomSource
+{
+    private final File repository;
+    private final RepositoryWalker walker;
+
+    public DirectoryPomSource( File repository, int walkThreads )
+    {
+        this.repository = repository;
+        this.walker = new RepositoryWalker( walkThreads );
+    }
+
+    public void visit( final Visitor visitor ) throws IOException, InterruptedException
+    {
+        walker.walk( repository.toPath(), new RepositoryWalker.Visitor()
+        {
+            public void visit( Path pom ) throws IOException, InterruptedException
+            {
+                visitor.visit( new FileModelSource( pom.toFile() ) );
+            }
+        } );
+    }
+
+    @Override
+    public String toString()
+    {
+        return walker.toString();
+    }
+}
@@ -0,0 +1,423 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP fetches against remote repositories. Every request goes through a token bucket for its host, and failed
+ * requests are retried with exponential backoff when the failure looks temporary: I/O errors, 5xx and 429. A 404 is
+ * an answer, not a failure, and is never retried.
+ * <p/>
+ * Responses are always read to the end and closed, so that {@link HttpURLConnection} can hand the connection back to
+ * its keep-alive cache. That cache is global to the JVM, so its size is set once at startup with
+ * {@link #keepAliveConnections(int)}, and one engine is shared by everything fetching in a process so that the request
+ * rate holds across all of it.
+ * <p/>
+ * Downloads are written to a temporary file next to the target while their SHA-1 is computed, checked against the
+ * ".sha1" file the repository publishes next to each file, and only then moved into place. An interrupted or
+ * corrupt transfer never leaves a broken file behind. If the target exists already, the download is conditional on
+ * it having changed, using its modification time and the ETag kept in a ".etag" file next to it.
+ * <p/>
+ * Fetches run on the calling thread. {@link #submit(Callable)} runs work on the engine's own pool, which is what
+ * bounds the number of concurrent fetches.
+ */
+public class DownloadEngine
+{
+    public enum Result
+    {
+        DOWNLOADED, NOT_MODIFIED, NOT_FOUND
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int READ_TIMEOUT = 30000;
+    private static final long MAX_BACKOFF = 30000;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, RateLimiter> hosts = new ConcurrentHashMap<String, RateLimiter>();
+    private final double requestsPerSecond;
+    private final int retries;
+    private final long backoff;
+    private final Random jitter = new Random();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong unverified = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * @param concurrency number of fetches running at the same time
+     * @param requestsPerSecond request rate allowed per host
+     * @param retries how many times a temporary failure is retried
+     * @param backoff milliseconds to wait before the first retry, doubled for each one after that
+     */
+    public DownloadEngine( int concurrency, double requestsPerSecond, int retries, long backoff )
+    {
+        this.requestsPerSecond = requestsPerSecond;
+        this.retries = retries;
+        this.backoff = backoff;
+
+        executor = Executors.newFixedThreadPool( concurrency, new ThreadFactory()
+        {
+            private final AtomicInteger threads = new AtomicInteger();
+
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "neomvn-download-" + threads.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+
+    /**
+     * Raise the number of idle connections per host that {@link HttpURLConnection} keeps alive to the number of
+     * concurrent fetches, unless the "http.maxConnections" system property has been set already. Called once from
+     * main, before anything connects.
+     */
+    public static void keepAliveConnections( int concurrency )
+    {
+        if ( System.getProperty( "http.maxConnections" ) == null )
+            System.setProperty( "http.maxConnections", Integer.toString( Math.max( 5, concurrency ) ) );
+    }
+
+    public <T> Future<T> submit( Callable<T> task )
+    {
+        return executor.submit( task );
+    }
+
+    /**
+     * Download a URL to a file, or refresh the file if it exists already. The download is started over if the
+     * connection fails halfway through or the checksum does not match.
+     */
+    public Result download( URL url, File file ) throws IOException
+    {
+        File etagFile = new File( file.getPath() + ".etag" );
+        for ( int attempt = 0; ; attempt++ )
+        {
+            long ifModifiedSince = file.exists() ? file.lastModified() : 0;
+            String etag = ifModifiedSince > 0 && etagFile.exists() ? readEtag( etagFile ) : null;
+            HttpURLConnection conn = open( url, ifModifiedSince, etag );
+            if ( conn == null )
+                return Result.NOT_FOUND;
+            if ( conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED )
+            {
+                discard( conn );
+                notModified.incrementAndGet();
+                return Result.NOT_MODIFIED;
+            }
+
+            file.getParentFile().mkdirs();
+            File tmp = File.createTempFile( file.getName() + ".", ".part", file.getParentFile() );
+            try
+            {
+                MessageDigest sha1 = sha1();
+                OutputStream out = new DigestOutputStream( new FileOutputStream( tmp ), sha1 );
+                try
+                {
+                    copy( conn, out );
+                }
+                finally
+                {
+                    out.close();
+                }
+                verify( url, sha1.digest() );
+
+                if ( conn.getLastModified() > 0 )
+                    tmp.setLastModified( conn.getLastModified() );
+                move( tmp, file );
+                if ( conn.getHeaderField( "ETag" ) != null )
+                    writeEtag( etagFile, conn.getHeaderField( "ETag" ) );
+                else
+                    etagFile.delete();
+                return Result.DOWNLOADED;
+            }
+            catch ( IOException e )
+            {
+                if ( attempt >= retries || e instanceof InterruptedIOException && Thread.currentThread().isInterrupted() )
+                    throw e;
+                pause( url, backoff( attempt ), e );
+            }
+            finally
+            {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the body of the response, or null if the URL does not exist
+     */
+    public String get( URL url ) throws IOException
+    {
+        HttpURLConnection conn = open( url, 0, null );
+        if ( conn == null )
+            return null;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copy( conn, out );
+        return out.toString( "UTF-8" );
+    }
+
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "%d requests, %d retried, %d not found, %d not modified, %d without checksum, %d KB",
+                requests.get(), retried.get(), notFound.get(), notModified.get(), unverified.get(), bytes.get() / 1024 );
+    }
+
+    /**
+     * Compare a digest with the checksum published next to the URL. Files without a published checksum are accepted
+     * as they are.
+     */
+    private void verify( URL url, byte[] digest ) throws IOException
+    {
+        String published = get( new URL( url.toExternalForm() + ".sha1" ) );
+        if ( published == null )
+        {
+            unverified.incrementAndGet();
+            return;
+        }
+
+        // Either just the checksum, or the checksum followed by the file name
+        String checksum = published.trim().split( "\\s+", 2 )[0].toLowerCase();
+        if ( checksum.length() != 40 )
+        {
+            logger.warn( "Ignoring malformed checksum for {}: {}", url, published );
+            unverified.incrementAndGet();
+            return;
+        }
+        if ( !checksum.equals( PomManifest.hex( digest ) ) )
+            throw new IOException( "Checksum mismatch for " + url + ": expected " + checksum + ", got " +
+                    PomManifest.hex( digest ) );
+    }
+
+    private static MessageDigest sha1()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-1" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static void move( File from, File to ) throws IOException
+    {
+        try
+        {
+            Files.move( from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+        }
+        catch ( AtomicMoveNotSupportedException e )
+        {
+            Files.move( from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+    private static String readEtag( File etagFile ) throws IOException
+    {
+        return new String( Files.readAllBytes( etagFile.toPath() ), "UTF-8" ).trim();
+    }
+
+    private static void writeEtag( File etagFile, String etag ) throws IOException
+    {
+        Files.write( etagFile.toPath(), etag.getBytes( "UTF-8" ) );
+    }
+
+    /**
+     * @param ifModifiedSince only fetch the URL if it changed after this time, or 0
+     * @param etag only fetch the URL if its ETag is not this one, or null
+     * @return a connection with a 200 or 304 response, or null on 404
+     */
+    private HttpURLConnection open( URL url, long ifModifiedSince, String etag ) throws IOException
+    {
+        RateLimiter limiter = limiter( url.getHost() );
+        for ( int attempt = 0; ; attempt++ )
+        {
+            HttpURLConnection conn = null;
+            int status = -1;
+            IOException failure = null;
+            try
+            {
+                limiter.acquire();
+                requests.incrementAndGet();
+
+                conn = (HttpURLConnection) url.openConnection();
+                conn.setInstanceFollowRedirects( true );
+                conn.setConnectTimeout( CONNECT_TIMEOUT );
+                conn.setReadTimeout( READ_TIMEOUT );
+                if ( ifModifiedSince > 0 )
+                    conn.setIfModifiedSince( ifModifiedSince );
+                if ( etag != null )
+                    conn.setRequestProperty( "If-None-Match", etag );
+                status = conn.getResponseCode();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException( "Interrupted while fetching " + url );
+            }
+            catch ( IOException e )
+            {
+                failure = e;
+            }
+
+            long wait = -1;
+            if ( failure == null )
+            {
+                if ( status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_NOT_MODIFIED )
+                    return conn;
+
+                discard( conn );
+                if ( status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE )
+                {
+                    notFound.incrementAndGet();
+                    return null;
+                }
+
+                failure = new IOException( "HTTP " + status + " for " + url );
+                if ( status != 429 && status < 500 )
+                    throw failure;
+                wait = retryAfter( conn );
+            }
+
+            if ( attempt >= retries )
+                throw failure;
+
+            pause( url, wait < 0 ? backoff( attempt ) : wait, failure );
+        }
+    }
+
+    private void pause( URL url, long wait, IOException failure ) throws InterruptedIOException
+    {
+        logger.debug( "Retrying {} in {} ms: {}", url, wait, failure.getMessage() );
+        retried.incrementAndGet();
+        try
+        {
+            Thread.sleep( wait );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while fetching " + url );
+        }
+    }
+
+    private RateLimiter limiter( String host )
+    {
+        RateLimiter limiter = hosts.get( host );
+        if ( limiter == null )
+        {
+            RateLimiter newLimiter = new RateLimiter( requestsPerSecond, Math.max( 1, (int) requestsPerSecond ) );
+            limiter = hosts.putIfAbsent( host, newLimiter );
+            if ( limiter == null )
+                limiter = newLimiter;
+        }
+        return limiter;
+    }
+
+    private long backoff( int attempt )
+    {
+        long wait = Math.min( MAX_BACKOFF, backoff << Math.min( attempt, 16 ) );
+        synchronized ( jitter )
+        {
+            return wait / 2 + (long) (jitter.nextDouble() * wait / 2);
+        }
+    }
+
+    private static long retryAfter( HttpURLConnection conn )
+    {
+        String retryAfter = conn.getHeaderField( "Retry-After" );
+        if ( retryAfter == null )
+            return -1;
+        try
+        {
+            return Math.min( MAX_BACKOFF, TimeUnit.SECONDS.toMillis( Long.parseLong( retryAfter.trim() ) ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            // An HTTP date, use the normal backoff
+            return -1;
+        }
+    }
+
+    private void copy( HttpURLConnection conn, OutputStream out ) throws IOException
+    {
+        InputStream in = conn.getInputStream();
+        try
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int len;
+            while ( (len = in.read( buffer )) != -1 )
+            {
+                out.write( buffer, 0, len );
+                bytes.addAndGet( len );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Read and close the error body, so the connection can be reused.
+     */
+    private static void discard( HttpURLConnection conn )
+    {
+        InputStream in = conn.getErrorStream();
+        if ( in == null )
+            return;
+        try
+        {
+            byte[] buffer = new byte[4096];
+            while ( in.read( buffer ) != -1 )
+            {
+                // Discard
+            }
+            in.close();
+        }
+        catch ( IOException e )
+        {
+            // The connection will not be reused
+        }
+    }
+}
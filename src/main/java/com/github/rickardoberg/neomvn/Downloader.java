@@ -3,65 +3,158 @@ package com.github.rickardoberg.neomvn;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.maven.model.Dependency;
-import org.apache.maven.model.Model;
-import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Element;
 
+/**
+ * Mirrors all POMs of a groupId, and everything they depend on, into a local repository.
+ * <p/>
+ * The crawl is a frontier of small tasks: directory listings and downloads run on the {@link DownloadEngine}, and
+ * each downloaded POM is parsed on a separate pool as soon as it arrives, so its missing dependencies are queued
+ * right away. The crawl is done when the last task in flight finishes.
+ * <p/>
+ * The POMs of the groupId are found by crawling the repository's directory listings, or, with --index, by reading
+ * the repository index, which takes one request instead of one per directory.
+ * <p/>
+ * Progress is kept in a {@link CrawlJournal} in the local repository. A crawl that was interrupted resumes from the
+ * listings and POMs it had not finished, and POMs that no repository had are not asked for again for a while.
+ */
 public class Downloader
 {
+    private static final String INDEX = "index:";
 
     private final RepositoryModelResolver resolver;
 
     public static void main( String[] args ) throws IOException
     {
-        String groupId = args[0];
-        File repo = new File(args[1]);
-
-        new Downloader(groupId, repo);
+        DownloaderOptions options = DownloaderOptions.parse( args );
+        DownloadEngine.keepAliveConnections( options.downloads );
+        new Downloader( options );
     }
 
     private String mavenRepo;
     private final String groupId;
     private final File repository;
     private final ModelResolver modelResolver;
-    private int requestCount = 0;
-
-    private List<String> failedDownloads = new ArrayList<String>(  );
+    private final DownloadEngine engine;
+    private final CrawlJournal journal;
+    private final ExecutorService parsers;
+    private final boolean refresh;
+    private final String index;
+    // Starts at one for the thread seeding the crawl
+    private final AtomicInteger inFlight = new AtomicInteger( 1 );
+    private final CountDownLatch crawled = new CountDownLatch( 1 );
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger downloadCount = new AtomicInteger();
+    private final AtomicInteger unchangedCount = new AtomicInteger();
+    private final AtomicInteger parseCount = new AtomicInteger();
+
+    private final Set<String> seen = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+    private final Set<String> failedDownloads = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
 
     public Downloader( String groupId, File repository ) throws IOException
     {
-        this.groupId = groupId;
-        this.repository = repository;
+        this( options( groupId, repository ) );
+    }
 
-        mavenRepo = "http://repo1.maven.org/maven2";
+    public Downloader( DownloaderOptions options ) throws IOException
+    {
+        this.groupId = options.groupId;
+        this.repository = options.repository;
+        this.refresh = options.refresh;
+        this.index = options.index;
 
-        resolver = new RepositoryModelResolver( repository, mavenRepo );
-        modelResolver = new ModelResolver( resolver );
+        mavenRepo = options.repositoryUrl;
 
+        engine = options.newEngine();
+        repository.mkdirs();
+        journal = new CrawlJournal( new File( repository, CrawlJournal.FILE_NAME ), options.missingTtlMillis );
+        resolver = new RepositoryModelResolver( repository, mavenRepo, engine, journal );
+        modelResolver = new ModelResolver( resolver );
+        parsers = Executors.newFixedThreadPool( options.parsers, new ThreadFactory()
+        {
+            private final AtomicInteger threads = new AtomicInteger();
 
-        File pomsFile = new File( repository, "poms.txt" );
-        List<String> poms;
-        if (pomsFile.exists())
-            poms = loadPomList( pomsFile );
-        else
-            poms = findPoms( groupId );
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "neomvn-parser-" + threads.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
 
-        downloadPoms(poms);
+        long start = System.currentTimeMillis();
+        try
+        {
+            if ( journal.isResumable() && !options.restart )
+            {
+                System.out.printf( "Resuming crawl: %d listings and %d POMs left, %d POMs done\n",
+                        journal.getPendingListings().size(), journal.getPendingPoms().size(),
+                        journal.getExpanded().size() );
+                seen.addAll( journal.getExpanded() );
+                for ( String url : new ArrayList<String>( journal.getPendingListings() ) )
+                {
+                    if ( url.startsWith( INDEX ) )
+                        readIndex( url.substring( INDEX.length() ) );
+                    else
+                        list( url );
+                }
+                for ( String pom : new ArrayList<String>( journal.getPendingPoms() ) )
+                {
+                    fetch( new File( pom ), true );
+                }
+            }
+            else
+            {
+                journal.restart();
 
-        poms = convertToLocal(poms);
+                File pomsFile = new File( repository, "poms.txt" );
+                if ( index != null )
+                    readIndex( index );
+                else if (pomsFile.exists())
+                {
+                    for ( String pom : loadPomList( pomsFile ) )
+                    {
+                        fetch( localFile( pom ), true );
+                    }
+                }
+                else
+                    findPoms( groupId );
+            }
 
-        while (!poms.isEmpty())
+            // Wait for the crawl to run out of work
+            done();
+            crawled.await();
+            journal.record( CrawlJournal.Event.COMPLETE, groupId );
+        }
+        catch ( InterruptedException e )
         {
-            System.out.printf("Downloading dependencies for %d POMs\n", poms.size());
-            poms = findDependencies(poms);
-            downloadPoms( poms );
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while crawling" );
+        }
+        finally
+        {
+            parsers.shutdownNow();
+            engine.shutdown();
+            journal.close();
         }
 
         if (!failedDownloads.isEmpty())
@@ -73,152 +166,271 @@ public class Downloader
             }
         }
 
-        System.out.println("Done");
+        System.out.printf( "Done in %d s: %d listings, %d POMs downloaded, %d POMs unchanged, %d POMs parsed (%s)\n",
+                (System.currentTimeMillis() - start) / 1000, requestCount.get(), downloadCount.get(),
+                unchangedCount.get(), parseCount.get(), engine );
     }
 
-    private List<String> convertToLocal( List<String> poms )
+    private static DownloaderOptions options( String groupId, File repository )
     {
-        List<String> localFiles = new ArrayList<String>(  );
-        for ( String pom : poms )
-        {
-            String file = pom.substring( mavenRepo.length() );
-            File localRepoFile = new File( repository, file );
-            localFiles.add(localRepoFile.getAbsolutePath());
-        }
-        return localFiles;
+        DownloaderOptions options = new DownloaderOptions();
+        options.groupId = groupId;
+        options.repository = repository;
+        return options;
+    }
+
+    private File localFile( String pom )
+    {
+        if (pom.startsWith( mavenRepo ))
+            return new File( repository, pom.substring( mavenRepo.length() ) );
+        else
+            return new File( pom );
     }
 
     private List<String> loadPomList( File file ) throws IOException
     {
         BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ) ) );
-        String pom;
-        List<String> poms = new ArrayList<String>(  );
-        while ((pom = reader.readLine()) != null)
+        try
+        {
+            String pom;
+            List<String> poms = new ArrayList<String>(  );
+            while ((pom = reader.readLine()) != null)
+            {
+                poms.add(pom);
+            }
+
+            return poms;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Fetch every version in the groupId that the repository index lists. The index is read on this thread while
+     * the POMs download.
+     *
+     * @param location path or URL of a nexus-maven-repository-index.gz file
+     */
+    private void readIndex( String location ) throws IOException
+    {
+        journal.record( CrawlJournal.Event.LISTING, INDEX + location );
+
+        File file;
+        if ( location.contains( "://" ) )
+        {
+            file = new File( repository, ".index/nexus-maven-repository-index.gz" );
+            System.out.println( "Downloading index " + location );
+            if ( engine.download( new URL( location ), file ) == DownloadEngine.Result.NOT_FOUND )
+                throw new FileNotFoundException( "No index at " + location );
+        }
+        else
+            file = new File( location );
+
+        NexusIndexReader reader = new NexusIndexReader( new FileInputStream( file ) );
+        try
+        {
+            long artifacts = reader.read( groupId, new NexusIndexReader.Visitor()
+            {
+                public void visit( String groupId, String artifactId, String version ) throws IOException
+                {
+                    fetch( resolver.getLocalFile( groupId, artifactId, version ), true );
+                }
+            } );
+            System.out.printf( "Index lists %d artifacts in %s (%d documents)\n", artifacts, groupId,
+                    reader.getDocuments() );
+        }
+        finally
         {
-            poms.add(pom);
+            reader.close();
         }
 
-        return poms;
+        journal.record( CrawlJournal.Event.LISTED, INDEX + location );
     }
 
-    private List<String> findPoms( String groupId ) throws IOException
+    private void findPoms( String groupId ) throws IOException
     {
-        // Do a search on Maven.org for all artifacts for this groupId
+        // Crawl the directory listings on Maven.org for all artifacts for this groupId
         String baseUrl = mavenRepo;
         String[] groupIds = groupId.split( "\\." );
         for ( String id : groupIds )
         {
             baseUrl += "/"+id;
         }
+        // Listings have relative links, so the directory URL must end with a slash
+        baseUrl += "/";
 
-        List<String> urls = new ArrayList<String>(  );
-        urls.add(baseUrl);
-
-        List<String> poms = new ArrayList<String>(  );
+        list( baseUrl );
+    }
 
-        while (!urls.isEmpty())
+    /**
+     * Read a directory listing, listing subdirectories and fetching POMs as they are found.
+     */
+    private void list( final String url ) throws IOException
+    {
+        journal.record( CrawlJournal.Event.LISTING, url );
+        schedule( true, new Callable<Void>()
         {
-            String url = urls.remove( 0 );
-            Connection conn = Jsoup.connect( url );
-            requestCount++;
-
-            for ( Element element : conn.get().select( "pre a" ) )
+            public Void call() throws IOException
             {
-                if (!element.attr( "href" ).equals( "../" ))
-                {
-                    String href = element.absUrl( "href" );
-                    System.out.println( href );
+                String listing = engine.get( new URL( url ) );
+                requestCount.incrementAndGet();
+                if ( listing == null )
+                    return null;
 
-                    if (href.endsWith( "/" ))
-                        urls.add( href );
-                    else if (href.endsWith( ".pom" ))
-                        poms.add(href);
+                for ( Element element : Jsoup.parse( listing, url ).select( "pre a" ) )
+                {
+                    if (!element.attr( "href" ).equals( "../" ))
+                    {
+                        String href = element.absUrl( "href" );
+                        System.out.println( href );
+
+                        if (href.endsWith( "/" ))
+                            list( href );
+                        else if (href.endsWith( ".pom" ))
+                            fetch( localFile( href ), true );
+                    }
                 }
+                journal.record( CrawlJournal.Event.LISTED, url );
+                return null;
             }
+        } );
+    }
 
-            try
-            {
-                Thread.sleep(100);
-            }
-            catch ( InterruptedException e )
-            {
-                throw new RuntimeException( e );
-            }
-        }
+    /**
+     * Download a POM unless it is here already, and then look for its dependencies. POMs are only fetched once per
+     * crawl. With --refresh, POMs that are here already are downloaded again if they changed.
+     *
+     * @param always look for dependencies even if the POM was here already
+     */
+    private void fetch( final File pom, final boolean always ) throws IOException
+    {
+        // Dependencies that are here already are not expanded, but may still be expanded from a listing later
+        if ( pom.exists() && !always )
+            return;
 
-        // List poms
-        System.out.println("Found POMs");
-        for ( String pom : poms )
+        if ( !seen.add( pom.getAbsolutePath() ) )
+            return;
+
+        journal.record( CrawlJournal.Event.DISCOVERED, pom.getAbsolutePath() );
+        if ( pom.exists() && !refresh )
         {
-            System.out.println(pom);
+            expand( pom );
+            return;
         }
 
-        return poms;
-    }
-
-    private void downloadPoms( List<String> poms ) throws IOException
-    {
-        for ( String pom : poms )
+        schedule( true, new Callable<Void>()
         {
-            File localRepoFile;
-            if (pom.startsWith( mavenRepo ))
-            {
-                String file = pom.substring( mavenRepo.length() );
-                localRepoFile = new File( repository, file );
-            } else
-            {
-                localRepoFile = new File(pom);
-            }
-
-            if (!localRepoFile.exists())
+            public Void call() throws IOException
             {
                 try
                 {
-                    resolver.download( localRepoFile );
+                    if ( resolver.download( pom ) == DownloadEngine.Result.DOWNLOADED )
+                    {
+                        downloadCount.incrementAndGet();
+                        journal.record( CrawlJournal.Event.DOWNLOADED, pom.getAbsolutePath() );
+                    }
+                    else
+                        unchangedCount.incrementAndGet();
+                }
+                catch ( FileNotFoundException e )
+                {
+                    // Recorded as missing by the resolver
+                    System.err.println( e.getMessage() );
+                    failedDownloads.add( pom.getAbsolutePath() );
+                    return null;
                 }
                 catch ( IOException e )
                 {
                     // Print and continue
                     e.printStackTrace();
-                    failedDownloads.add(localRepoFile.getAbsolutePath());
+                    failedDownloads.add( pom.getAbsolutePath() );
+                    journal.record( CrawlJournal.Event.FAILED, pom.getAbsolutePath() );
+                    return null;
                 }
+
+                expand( pom );
+                return null;
             }
-        }
+        } );
     }
 
-    private List<String> findDependencies( List<String> poms )
+    /**
+     * Parse a POM and fetch those of its dependencies that are missing.
+     */
+    private void expand( final File pom )
     {
-        List<String> dependencies = new ArrayList<String>(  );
-        for ( String pom : poms )
+        schedule( false, new Callable<Void>()
         {
-            File localRepoFile = new File( pom );
-
-            try
+            public Void call() throws IOException
             {
-                Model model = modelResolver.resolve( localRepoFile );
-
-                for ( Dependency dependency : model.getDependencies() )
+                try
                 {
-                    String version = dependency.getVersion();
-                    if ( version.startsWith( "[" )) // Handle ranges
-                        version = version.substring( 1, version.indexOf( "," )-1 );
-
-                    File dependencyPom = resolver.getLocalFile( dependency.getGroupId(), dependency.getArtifactId(), version );
-
-                    String dependencyPomAbsolutePath = dependencyPom.getAbsolutePath();
-                    if (!dependencyPom.exists() && !dependencies.contains( dependencyPomAbsolutePath ) && !failedDownloads.contains( dependencyPomAbsolutePath ))
-                        dependencies.add( dependencyPomAbsolutePath );
-
-                  //  System.out.println(dependency+"(need download="+!dependencyPom.exists()+")");
+                    PomRecord record = modelResolver.record( pom );
+                    parseCount.incrementAndGet();
+
+                    for ( PomRecord.DependencyRecord dependency : record.dependencies )
+                    {
+                        String version = dependency.version;
+                        if ( version == null )
+                            continue;
+                        // Nothing is known about the versions of a dependency before it is fetched
+                        version = VersionRange.fallback( version );
+
+                        File dependencyPom = resolver.getLocalFile( dependency.groupId, dependency.artifactId, version );
+                        if ( !failedDownloads.contains( dependencyPom.getAbsolutePath() ) )
+                            fetch( dependencyPom, false );
+                    }
+                    journal.record( CrawlJournal.Event.EXPANDED, pom.getAbsolutePath() );
                 }
+                catch ( Exception e )
+                {
+                    failedDownloads.add( pom.getAbsolutePath() );
+                    System.err.println( "Could not resolve dependencies for:" + pom );
+                    journal.record( CrawlJournal.Event.FAILED, pom.getAbsolutePath() );
+                }
+                return null;
             }
-            catch ( Exception e )
+        } );
+    }
+
+    /**
+     * Run a crawl task on the download engine or the parser pool. The task is counted before it is queued, and any
+     * tasks it schedules are counted before it is done, so the count only drops to zero once the whole crawl is done.
+     */
+    private void schedule( boolean network, final Callable<Void> task )
+    {
+        inFlight.incrementAndGet();
+        Callable<Void> tracked = new Callable<Void>()
+        {
+            public Void call() throws Exception
             {
-                failedDownloads.add(pom);
-                System.err.println("Could not resolve dependencies for:"+pom);
+                try
+                {
+                    return task.call();
+                }
+                catch ( Exception e )
+                {
+                    e.printStackTrace();
+                    return null;
+                }
+                finally
+                {
+                    done();
+                }
             }
-        }
+        };
+
+        if ( network )
+            engine.submit( tracked );
+        else
+            parsers.submit( tracked );
+    }
 
-        return dependencies;
+    private void done()
+    {
+        if ( inFlight.decrementAndGet() == 0 )
+            crawled.countDown();
     }
 }
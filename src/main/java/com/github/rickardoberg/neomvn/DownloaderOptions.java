@@ -0,0 +1,116 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line options of {@link Downloader}.
+ */
+public class DownloaderOptions
+{
+    public String groupId;
+    public File repository;
+
+    /**
+     * Remote repository to mirror from. Point this at a local server to try the downloader out.
+     */
+    public String repositoryUrl = "http://repo1.maven.org/maven2";
+
+    /**
+     * Number of downloads running at the same time.
+     */
+    public int downloads = 8;
+
+    /**
+     * Number of threads parsing downloaded POMs.
+     */
+    public int parsers = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Requests per second allowed against each host.
+     */
+    public double rate = 20;
+
+    /**
+     * How many times a request is retried after a temporary failure, and how long to wait before the first retry.
+     */
+    public int retries = 3;
+    public long retryDelayMillis = 500;
+
+    /**
+     * How long a POM that no repository has is remembered as missing.
+     */
+    public long missingTtlMillis = TimeUnit.HOURS.toMillis( 24 );
+
+    /**
+     * Start a new crawl even if the {@link CrawlJournal} has an unfinished one.
+     */
+    public boolean restart = false;
+
+    /**
+     * Download POMs that are in the local repository already again if they changed on the server.
+     */
+    public boolean refresh = false;
+
+    /**
+     * Path or URL of a repository index to find the POMs of the groupId in, instead of crawling directory listings.
+     * Repositories publish it as ".index/nexus-maven-repository-index.gz".
+     */
+    public String index;
+
+    public static DownloaderOptions parse( String[] args )
+    {
+        DownloaderOptions options = new DownloaderOptions();
+        int positional = 0;
+        for ( int i = 0; i < args.length; i++ )
+        {
+            if ( args[i].equals( "--repository-url" ) )
+                options.repositoryUrl = args[++i];
+            else if ( args[i].equals( "--downloads" ) )
+                options.downloads = Integer.parseInt( args[++i] );
+            else if ( args[i].equals( "--parsers" ) )
+                options.parsers = Integer.parseInt( args[++i] );
+            else if ( args[i].equals( "--rate" ) )
+                options.rate = Double.parseDouble( args[++i] );
+            else if ( args[i].equals( "--retries" ) )
+                options.retries = Integer.parseInt( args[++i] );
+            else if ( args[i].equals( "--retry-delay" ) )
+                options.retryDelayMillis = Long.parseLong( args[++i] );
+            else if ( args[i].equals( "--missing-ttl" ) )
+                options.missingTtlMillis = TimeUnit.HOURS.toMillis( Long.parseLong( args[++i] ) );
+            else if ( args[i].equals( "--restart" ) )
+                options.restart = true;
+            else if ( args[i].equals( "--refresh" ) )
+                options.refresh = true;
+            else if ( args[i].equals( "--index" ) )
+                options.index = args[++i];
+            else if ( args[i].startsWith( "--" ) )
+                throw new IllegalArgumentException( "Unknown option " + args[i] );
+            else if ( positional++ == 0 )
+                options.groupId = args[i];
+            else
+                options.repository = new File( args[i] );
+        }
+
+        if ( options.groupId == null || options.repository == null )
+            throw new IllegalArgumentException( "Usage: Downloader [options] <groupId> <repository>" );
+
+        if ( options.downloads < 1 )
+            throw new IllegalArgumentException( "--downloads must be at least 1" );
+
+        if ( options.parsers < 1 )
+            throw new IllegalArgumentException( "--parsers must be at least 1" );
+
+        if ( !(options.rate > 0) )
+            throw new IllegalArgumentException( "--rate must be more than 0 requests per second" );
+
+        if ( options.repositoryUrl.endsWith( "/" ) )
+            options.repositoryUrl = options.repositoryUrl.substring( 0, options.repositoryUrl.length() - 1 );
+        return options;
+    }
+
+    public DownloadEngine newEngine()
+    {
+        return new DownloadEngine( downloads, rate, retries, retryDelayMillis );
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the nodes and relationships an import would put in a store straight to a {@link GraphExport} instead,
+ * without ever creating a Neo4j store. Nodes are numbered in the order they are created, and looked up in a
+ * {@link NodeIdDictionary} the same way as in {@link BatchGraphWriter}, so the export has the same groups, artifacts,
+ * versions, placeholders and HAS_* relationships as a store written by either writer and then exported with
+ * {@link GraphExporter}. The store-only parts of the model, version order and the LATEST_* relationships, are left out.
+ * <p/>
+ * Like the batch inserter this only creates a new export, and nothing is written until {@link #shutdown()}.
+ */
+public class ExportGraphWriter
+    implements GraphWriter
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final GraphExport export;
+    private final NodeIdDictionary ids = new NodeIdDictionary();
+    private final VersionCatalog catalog = new VersionCatalog();
+    private final ImportMetrics metrics;
+
+    private long nodes;
+
+    public ExportGraphWriter( File directory, ImportMetrics metrics )
+    {
+        this.metrics = metrics;
+        try
+        {
+            export = new GraphExport( directory );
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalStateException( "Could not create export in " + directory, e );
+        }
+    }
+
+    public void version( PomRecord pom )
+    {
+        long start = System.nanoTime();
+        long versionNode = ids.version( pom.groupId, pom.artifactId, pom.version );
+        metrics.lookup.recordSince( start );
+        catalog.add( pom.groupId, pom.artifactId, pom.version );
+        try
+        {
+            if ( versionNode == NodeIdDictionary.NONE )
+            {
+                artifact( pom.groupId, pom.artifactId, pom.version, pom.name, false );
+                return;
+            }
+
+            // Already there from another POM with the same coordinates, such as a timestamped SNAPSHOT
+            export.name( versionNode, pom.name );
+            export.name( ids.artifact( pom.groupId, pom.artifactId ), pom.name );
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    public void dependencies( PomRecord pom )
+    {
+        try
+        {
+            long versionNode = version( pom.groupId, pom.artifactId, pom.version );
+            for ( PomRecord.DependencyRecord dependency : pom.dependencies )
+            {
+                String version = catalog.resolve( dependency.groupId, dependency.artifactId, dependency.version );
+                long dependencyVersionNode = version( dependency.groupId, dependency.artifactId, version );
+
+                long start = System.nanoTime();
+                export.relationship( versionNode, dependencyVersionNode, CsrGraphFile.HAS_DEPENDENCY,
+                        Main.withDefault( dependency.scope, "compile" ), dependency.optional,
+                        VersionRange.isRange( dependency.version ) ? dependency.version : null );
+                metrics.relationship.recordSince( start );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    public void batch()
+    {
+    }
+
+    public void finish()
+    {
+        logger.info( "Node id dictionary: {}", ids );
+        logger.info( "Version catalog: {}", catalog );
+    }
+
+    public void shutdown()
+    {
+        long start = System.currentTimeMillis();
+        try
+        {
+            export.close();
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalStateException( "Could not write export", e );
+        }
+        logger.info( "Export: {} in {} ms", export, System.currentTimeMillis() - start );
+    }
+
+    private long artifact( String groupId, String artifactId, String version, String name, boolean missing )
+        throws IOException
+    {
+        logger.debug( "{} {} {}", groupId, artifactId, version );
+
+        long start = System.nanoTime();
+        long groupIdNode = ids.group( groupId );
+        metrics.lookup.recordSince( start );
+        if ( groupIdNode == NodeIdDictionary.NONE )
+        {
+            groupIdNode = nodes++;
+            export.node( groupIdNode, CsrGraphFile.GROUP, groupId, null, null, null, false );
+            ids.group( groupId, groupIdNode );
+        }
+
+        start = System.nanoTime();
+        long artifactIdNode = ids.artifact( groupId, artifactId );
+        metrics.lookup.recordSince( start );
+        boolean newArtifact = artifactIdNode == NodeIdDictionary.NONE;
+        if ( newArtifact )
+        {
+            artifactIdNode = nodes++;
+            export.node( artifactIdNode, CsrGraphFile.ARTIFACT, groupId, artifactId, null, name, false );
+            ids.artifact( groupId, artifactId, artifactIdNode );
+        }
+
+        long versionNode = nodes++;
+        export.node( versionNode, CsrGraphFile.VERSION, groupId, artifactId, version, name, missing );
+        export.name( artifactIdNode, name );
+
+        ids.version( groupId, artifactId, version, versionNode );
+
+        if ( newArtifact )
+            export.relationship( groupIdNode, artifactIdNode, CsrGraphFile.HAS_ARTIFACT, null, false, null );
+        export.relationship( artifactIdNode, versionNode, CsrGraphFile.HAS_VERSION, null, false, null );
+
+        return versionNode;
+    }
+
+    private long version( String groupId, String artifactId, String version ) throws IOException
+    {
+        long start = System.nanoTime();
+        long versionNode = ids.version( groupId, artifactId, version );
+        metrics.lookup.recordSince( start );
+        if ( versionNode != NodeIdDictionary.NONE )
+            return versionNode;
+
+        // Broken lookup - create placeholder marked as missing
+        long fakeNode = artifact( groupId, artifactId, version, artifactId, true );
+        metrics.missing();
+        return fakeNode;
+    }
+}
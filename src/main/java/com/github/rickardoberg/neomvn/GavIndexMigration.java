@@ -0,0 +1,105 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Backfills the "gav" key of the versions index in a database imported before that key existed. Every version node
+ * that can not be found by its groupId:artifactId:version is added. Running it twice is harmless.
+ */
+public class GavIndexMigration
+{
+    private static final int BATCH_SIZE = 10000;
+
+    public static void main( String[] args )
+    {
+        File dbPath = new File( args.length == 1 ? args[0] : "neomvn" );
+        if ( !dbPath.isDirectory() )
+            throw new IllegalArgumentException( "No database at " + dbPath.getAbsolutePath() );
+
+        GraphDatabaseService graphDatabaseService = new GraphDatabaseFactory().newEmbeddedDatabase( dbPath.getAbsolutePath() );
+        try
+        {
+            new GavIndexMigration( graphDatabaseService ).migrate();
+        }
+        finally
+        {
+            graphDatabaseService.shutdown();
+        }
+    }
+
+    private final GraphDatabaseService graphDatabaseService;
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    public GavIndexMigration( GraphDatabaseService graphDatabaseService )
+    {
+        this.graphDatabaseService = graphDatabaseService;
+    }
+
+    public void migrate()
+    {
+        Index<Node> versions = graphDatabaseService.index().forNodes( "versions" );
+
+        int scanned = 0;
+        int added = 0;
+        Transaction tx = graphDatabaseService.beginTx();
+        try
+        {
+            for ( Node node : GlobalGraphOperations.at( graphDatabaseService ).getAllNodes() )
+            {
+                if ( !node.hasProperty( "version" ) )
+                    continue;
+
+                String gav = CompactModel.getGav( node );
+                if ( !isIndexed( versions, gav, node ) )
+                {
+                    versions.add( node, "gav", gav );
+                    added++;
+                }
+
+                if ( ++scanned % BATCH_SIZE == 0 )
+                {
+                    tx.success();
+                    tx.finish();
+                    tx = graphDatabaseService.beginTx();
+                    logger.info( "Scanned {} version nodes, added {} gav keys", scanned, added );
+                }
+            }
+
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+
+        logger.info( "Done. Scanned {} version nodes, added {} gav keys", scanned, added );
+    }
+
+    private boolean isIndexed( Index<Node> versions, String gav, Node node )
+    {
+        IndexHits<Node> hits = versions.get( "gav", gav );
+        try
+        {
+            for ( Node hit : hits )
+            {
+                if ( hit.equals( node ) )
+                    return true;
+            }
+            return false;
+        }
+        finally
+        {
+            hits.close();
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes group, artifact and version nodes and HAS_* relationships to a directory as a {@link CsrGraphFile}, and as
+ * "nodes.csv" and "relationships.csv" in the format of the Neo4j bulk import tool, with the node numbers as ids.
+ * <p/>
+ * Everything is streamed through {@link MappedFile}s: strings are appended once each to a temporary file, node records
+ * are written at their number in another, so that the name of an artifact can still be changed, and relationships are
+ * appended in the order they come. On {@link #close()} the relationships are put in CSR order with a counting sort
+ * that uses the offsets section of the CSR file itself for the counts, and the CSV files are written from the CSR
+ * file. Only the string dictionary is kept on the heap, which grows with the number of distinct coordinates, names and
+ * scopes rather than with nodes and relationships.
+ */
+public class GraphExport
+    implements Closeable
+{
+    public static final String NODES_FILE_NAME = "nodes.csv";
+    public static final String RELATIONSHIPS_FILE_NAME = "relationships.csv";
+
+    private static final String NODES_HEADER = "id:ID,:LABEL,groupId,artifactId,version,name,missing:boolean";
+    private static final String RELATIONSHIPS_HEADER = ":START_ID,:END_ID,:TYPE,scope,optional:boolean,versionRange";
+
+    // Source node before each relationship record until they are sorted
+    private static final int UNSORTED_RELATIONSHIP_SIZE = 4 + CsrGraphFile.RELATIONSHIP_SIZE;
+
+    private final File directory;
+    private final File stringsFile;
+    private final File nodesFile;
+    private final File relationshipsFile;
+    private final MappedFile strings;
+    private final MappedFile nodes;
+    private final MappedFile relationships;
+
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+    private long stringBytes;
+    private long nodeCount;
+    private long relationshipCount;
+
+    public GraphExport( File directory ) throws IOException
+    {
+        this.directory = directory;
+        directory.mkdirs();
+        stringsFile = new File( directory, "strings.tmp" );
+        nodesFile = new File( directory, "nodes.tmp" );
+        relationshipsFile = new File( directory, "relationships.tmp" );
+        strings = new MappedFile( stringsFile, true );
+        nodes = new MappedFile( nodesFile, true );
+        relationships = new MappedFile( relationshipsFile, true );
+
+        // String 0 stands for a missing property
+        string( "" );
+    }
+
+    /**
+     * Write a node, or overwrite it if it was already written. Nodes are numbered from 0, and numbers that are never
+     * written are left out of the export.
+     *
+     * @param kind {@link CsrGraphFile#GROUP}, {@link CsrGraphFile#ARTIFACT} or {@link CsrGraphFile#VERSION}
+     */
+    public void node( long node, int kind, String groupId, String artifactId, String version, String name,
+                      boolean missing ) throws IOException
+    {
+        long at = check( node ) * CsrGraphFile.NODE_SIZE;
+        nodes.putByte( at, kind );
+        nodes.putByte( at + 1, missing ? CsrGraphFile.MISSING : 0 );
+        nodes.putInt( at + 4, string( groupId ) );
+        nodes.putInt( at + 8, string( artifactId ) );
+        nodes.putInt( at + 12, string( version ) );
+        nodes.putInt( at + 16, string( name ) );
+        nodeCount = Math.max( nodeCount, node + 1 );
+    }
+
+    /**
+     * Change the name of a node that was already written.
+     */
+    public void name( long node, String name ) throws IOException
+    {
+        nodes.putInt( check( node ) * CsrGraphFile.NODE_SIZE + 16, string( name ) );
+    }
+
+    /**
+     * @param type {@link CsrGraphFile#HAS_ARTIFACT}, {@link CsrGraphFile#HAS_VERSION} or
+     * {@link CsrGraphFile#HAS_DEPENDENCY}
+     */
+    public void relationship( long start, long end, int type, String scope, boolean optional, String versionRange )
+        throws IOException
+    {
+        relationships.putInt( (int) check( start ) );
+        relationships.putInt( (int) check( end ) );
+        relationships.putByte( type );
+        relationships.putByte( optional ? CsrGraphFile.OPTIONAL : 0 );
+        relationships.putByte( 0 );
+        relationships.putByte( 0 );
+        relationships.putInt( string( scope ) );
+        relationships.putInt( string( versionRange ) );
+        relationshipCount++;
+    }
+
+    /**
+     * Sort the relationships, write the CSR and CSV files, and delete the temporary files.
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            writeCsr( new File( directory, CsrGraphFile.FILE_NAME ) );
+        }
+        finally
+        {
+            strings.close();
+            nodes.close();
+            relationships.close();
+            stringsFile.delete();
+            nodesFile.delete();
+            relationshipsFile.delete();
+        }
+
+        CsrGraphFile csr = new CsrGraphFile( new File( directory, CsrGraphFile.FILE_NAME ) );
+        try
+        {
+            writeNodes( csr, new File( directory, NODES_FILE_NAME ) );
+            writeRelationships( csr, new File( directory, RELATIONSHIPS_FILE_NAME ) );
+        }
+        finally
+        {
+            csr.close();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "%d nodes, %d relationships, %d strings of %d KB", nodeCount, relationshipCount,
+                dictionary.size(), stringBytes / 1024 );
+    }
+
+    private long check( long node )
+    {
+        if ( node < 0 || node > 0xFFFFFFFFL )
+            throw new IllegalArgumentException( "Node number out of range for the export: " + node );
+        return node;
+    }
+
+    private int string( String string ) throws IOException
+    {
+        if ( string == null )
+            return 0;
+        Integer id = dictionary.get( string );
+        if ( id == null )
+        {
+            id = dictionary.size();
+            dictionary.put( string, id );
+            byte[] bytes = string.getBytes( CsrGraphFile.UTF_8 );
+            strings.putInt( bytes.length );
+            strings.put( bytes, 0, bytes.length );
+            stringBytes += bytes.length;
+        }
+        return id;
+    }
+
+    private void writeCsr( File file ) throws IOException
+    {
+        long stringCount = dictionary.size();
+        long stringOffsetsAt = CsrGraphFile.HEADER_SIZE;
+        long stringBytesAt = stringOffsetsAt + (stringCount + 1) * 8;
+        long nodesAt = stringBytesAt + stringBytes;
+        long offsetsAt = nodesAt + nodeCount * CsrGraphFile.NODE_SIZE;
+        long relationshipsAt = offsetsAt + (nodeCount + 1) * 8;
+
+        MappedFile csr = new MappedFile( file, true );
+        try
+        {
+            csr.putInt( CsrGraphFile.MAGIC );
+            csr.putInt( CsrGraphFile.FORMAT_VERSION );
+            csr.putLong( nodeCount );
+            csr.putLong( relationshipCount );
+            csr.putLong( stringCount );
+            csr.putLong( stringOffsetsAt );
+            csr.putLong( stringBytesAt );
+            csr.putLong( nodesAt );
+            csr.putLong( offsetsAt );
+            csr.putLong( relationshipsAt );
+
+            strings.position( 0 );
+            csr.position( stringBytesAt );
+            long offset = 0;
+            for ( long i = 0; i < stringCount; i++ )
+            {
+                csr.putLong( stringOffsetsAt + i * 8, offset );
+                int length = strings.getInt();
+                csr.copy( strings, length );
+                offset += length;
+            }
+            csr.putLong( stringOffsetsAt + stringCount * 8, offset );
+
+            nodes.position( 0 );
+            csr.position( nodesAt );
+            csr.copy( nodes, nodeCount * CsrGraphFile.NODE_SIZE );
+
+            // Count the relationships of each node into the offset of the next one, and add them up into offsets
+            for ( long i = 0; i < relationshipCount; i++ )
+            {
+                long at = offsetsAt + ((relationships.getInt( i * UNSORTED_RELATIONSHIP_SIZE ) & 0xFFFFFFFFL) + 1) * 8;
+                csr.putLong( at, csr.getLong( at ) + 1 );
+            }
+            long total = 0;
+            for ( long node = 0; node <= nodeCount; node++ )
+            {
+                long at = offsetsAt + node * 8;
+                total += csr.getLong( at );
+                csr.putLong( at, total );
+            }
+
+            // Put each relationship at the offset of its node and move the offset past it, which leaves every offset
+            // at the end of its node, where the next node starts
+            byte[] record = new byte[CsrGraphFile.RELATIONSHIP_SIZE];
+            relationships.position( 0 );
+            for ( long i = 0; i < relationshipCount; i++ )
+            {
+                long at = offsetsAt + (relationships.getInt() & 0xFFFFFFFFL) * 8;
+                relationships.get( record, 0, record.length );
+                long index = csr.getLong( at );
+                csr.put( relationshipsAt + index * CsrGraphFile.RELATIONSHIP_SIZE, record, 0, record.length );
+                csr.putLong( at, index + 1 );
+            }
+            for ( long node = nodeCount; node > 0; node-- )
+            {
+                csr.putLong( offsetsAt + node * 8, csr.getLong( offsetsAt + (node - 1) * 8 ) );
+            }
+            csr.putLong( offsetsAt, 0 );
+        }
+        finally
+        {
+            csr.close();
+        }
+    }
+
+    private static void writeNodes( CsrGraphFile csr, File file ) throws IOException
+    {
+        CsvFile csv = new CsvFile( file, csr );
+        try
+        {
+            csv.text( NODES_HEADER );
+            csv.newline();
+            for ( long node = 0; node < csr.getNodeCount(); node++ )
+            {
+                int kind = csr.getKind( node );
+                if ( kind == CsrGraphFile.NONE )
+                    continue;
+                csv.number( node );
+                csv.comma();
+                csv.text( CsrGraphFile.label( kind ) );
+                csv.comma();
+                csv.string( csr.getGroupId( node ) );
+                csv.comma();
+                csv.string( csr.getArtifactId( node ) );
+                csv.comma();
+                csv.string( csr.getVersion( node ) );
+                csv.comma();
+                csv.string( csr.getName( node ) );
+                csv.comma();
+                if ( csr.isMissing( node ) )
+                    csv.text( "true" );
+                csv.newline();
+            }
+        }
+        finally
+        {
+            csv.close();
+        }
+    }
+
+    private static void writeRelationships( CsrGraphFile csr, File file ) throws IOException
+    {
+        CsvFile csv = new CsvFile( file, csr );
+        try
+        {
+            csv.text( RELATIONSHIPS_HEADER );
+            csv.newline();
+            for ( long node = 0; node < csr.getNodeCount(); node++ )
+            {
+                long end = csr.getEndRelationship( node );
+                for ( long relationship = csr.getFirstRelationship( node ); relationship < end; relationship++ )
+                {
+                    int type = csr.getType( relationship );
+                    csv.number( node );
+                    csv.comma();
+                    csv.number( csr.getEndNode( relationship ) );
+                    csv.comma();
+                    csv.text( CsrGraphFile.type( type ) );
+                    csv.comma();
+                    csv.string( csr.getScope( relationship ) );
+                    csv.comma();
+                    if ( type == CsrGraphFile.HAS_DEPENDENCY )
+                        csv.text( csr.isOptional( relationship ) ? "true" : "false" );
+                    csv.comma();
+                    csv.string( csr.getVersionRange( relationship ) );
+                    csv.newline();
+                }
+            }
+        }
+        finally
+        {
+            csv.close();
+        }
+    }
+
+    /**
+     * Buffers CSV lines into a {@link MappedFile}. Strings are copied as UTF-8 straight from the CSR file, and quoted
+     * with any quotes in them doubled, which works on the bytes since UTF-8 never has ASCII bytes inside a character.
+     */
+    private static class CsvFile
+    {
+        private final MappedFile out;
+        private final CsrGraphFile csr;
+        private final byte[] buffer = new byte[1 << 16];
+        private byte[] string = new byte[256];
+        private int size;
+
+        private CsvFile( File file, CsrGraphFile csr ) throws IOException
+        {
+            out = new MappedFile( file, true );
+            this.csr = csr;
+        }
+
+        private void comma() throws IOException
+        {
+            put( ',' );
+        }
+
+        private void newline() throws IOException
+        {
+            put( '\n' );
+        }
+
+        /**
+         * Write ASCII text that needs no quoting.
+         */
+        private void text( String text ) throws IOException
+        {
+            for ( int i = 0; i < text.length(); i++ )
+            {
+                put( text.charAt( i ) );
+            }
+        }
+
+        private void number( long number ) throws IOException
+        {
+            if ( number >= 10 )
+                number( number / 10 );
+            put( (int) ('0' + number % 10) );
+        }
+
+        /**
+         * Write a string from the CSR file, or nothing for string 0, which leaves the property out.
+         */
+        private void string( int id ) throws IOException
+        {
+            if ( id == 0 )
+                return;
+            int length = csr.getStringLength( id );
+            if ( string.length < length )
+                string = new byte[Math.max( length, string.length * 2 )];
+            csr.getStringBytes( id, string );
+
+            put( '"' );
+            for ( int i = 0; i < length; i++ )
+            {
+                if ( string[i] == '"' )
+                    put( '"' );
+                put( string[i] );
+            }
+            put( '"' );
+        }
+
+        private void put( int b ) throws IOException
+        {
+            if ( size == buffer.length )
+                flush();
+            buffer[size++] = (byte) b;
+        }
+
+        private void flush() throws IOException
+        {
+            out.put( buffer, 0, size );
+            size = 0;
+        }
+
+        private void close() throws IOException
+        {
+            try
+            {
+                flush();
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+    }
+}
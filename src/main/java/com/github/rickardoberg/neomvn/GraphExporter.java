@@ -0,0 +1,114 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports the group, artifact and version nodes and HAS_* relationships of an existing database to a
+ * {@link GraphExport}, for analytics tools that would rather load files than traverse a store. Nodes are streamed in
+ * node id order, which is also their number in the export, with their coordinates read through {@link CompactModel}
+ * so that both models export the same way. Nothing is collected on the heap along the way.
+ */
+public class GraphExporter
+{
+    private static final DynamicRelationshipType has_artifact = DynamicRelationshipType.withName( "HAS_ARTIFACT" );
+    private static final DynamicRelationshipType has_version = DynamicRelationshipType.withName( "HAS_VERSION" );
+    private static final DynamicRelationshipType has_dependency = DynamicRelationshipType.withName( "HAS_DEPENDENCY" );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    public static void main( String[] args ) throws IOException
+    {
+        if ( args.length != 2 )
+        {
+            System.err.println( "Usage: GraphExporter <database> <export directory>" );
+            return;
+        }
+        ImportOptions options = new ImportOptions();
+        options.database = new File( args[0] );
+        options.export = new File( args[1] );
+        run( options );
+    }
+
+    /**
+     * Export the database in the options to their export directory.
+     */
+    public static void run( ImportOptions options ) throws IOException
+    {
+        File dbPath = options.database;
+        if ( !dbPath.isDirectory() )
+            throw new IllegalArgumentException( "No database at " + dbPath.getAbsolutePath() );
+
+        GraphDatabaseService graphDatabaseService = new GraphDatabaseFactory().newEmbeddedDatabase( dbPath.getAbsolutePath() );
+        try
+        {
+            new GraphExporter().export( graphDatabaseService, options.export );
+        }
+        finally
+        {
+            graphDatabaseService.shutdown();
+        }
+    }
+
+    public void export( GraphDatabaseService graphDatabaseService, File directory ) throws IOException
+    {
+        long start = System.currentTimeMillis();
+        GraphExport export = new GraphExport( directory );
+        try
+        {
+            for ( Node node : GlobalGraphOperations.at( graphDatabaseService ).getAllNodes() )
+            {
+                if ( node.hasProperty( "version" ) )
+                {
+                    export.node( node.getId(), CsrGraphFile.VERSION, CompactModel.getGroupId( node ),
+                            CompactModel.getArtifactId( node ), (String) node.getProperty( "version" ),
+                            (String) node.getProperty( "name", null ), node.hasProperty( "missing" ) );
+                    for ( Relationship dependency : node.getRelationships( has_dependency, Direction.OUTGOING ) )
+                    {
+                        export.relationship( node.getId(), dependency.getEndNode().getId(),
+                                CsrGraphFile.HAS_DEPENDENCY, (String) dependency.getProperty( "scope", null ),
+                                (Boolean) dependency.getProperty( "optional", false ),
+                                (String) dependency.getProperty( "versionRange", null ) );
+                    }
+                }
+                else if ( node.hasProperty( "artifactId" ) )
+                {
+                    export.node( node.getId(), CsrGraphFile.ARTIFACT, CompactModel.getGroupId( node ),
+                            (String) node.getProperty( "artifactId" ), null, (String) node.getProperty( "name", null ),
+                            false );
+                    relationships( export, node, has_version, CsrGraphFile.HAS_VERSION );
+                }
+                else if ( node.hasProperty( "groupId" ) )
+                {
+                    export.node( node.getId(), CsrGraphFile.GROUP, (String) node.getProperty( "groupId" ), null,
+                            null, null, false );
+                    relationships( export, node, has_artifact, CsrGraphFile.HAS_ARTIFACT );
+                }
+            }
+        }
+        finally
+        {
+            export.close();
+        }
+        logger.info( "Exported {} to {} in {} ms", export, directory, System.currentTimeMillis() - start );
+    }
+
+    private static void relationships( GraphExport export, Node node, DynamicRelationshipType type, int exportType )
+        throws IOException
+    {
+        for ( Relationship relationship : node.getRelationships( type, Direction.OUTGOING ) )
+        {
+            export.relationship( node.getId(), relationship.getEndNode().getId(), exportType, null, false, null );
+        }
+    }
+}
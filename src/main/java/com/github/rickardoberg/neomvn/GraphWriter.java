@@ -0,0 +1,32 @@
+package com.github.rickardoberg.neomvn;
+
+/**
+ * Writes the graph model for resolved POMs. The import first calls {@link #version(PomRecord)} for every POM, and
+ * then {@link #dependencies(PomRecord)} for every POM, so all version nodes exist before any dependency is added.
+ * Calling them again for a POM that was already written updates its version node and replaces its dependencies.
+ */
+public interface GraphWriter
+{
+    /**
+     * Add the group, artifact and version nodes for a POM.
+     */
+    void version( PomRecord pom );
+
+    /**
+     * Add HAS_DEPENDENCY relationships from the version node of a POM. Dependencies on versions that have no node
+     * get a placeholder version node marked as missing.
+     */
+    void dependencies( PomRecord pom );
+
+    /**
+     * Called after each POM has been handled, so the writer can decide where to put transaction boundaries.
+     */
+    void batch();
+
+    /**
+     * Make everything written so far durable.
+     */
+    void finish();
+
+    void shutdown();
+}
@@ -0,0 +1,19 @@
+package com.github.rickardoberg.neomvn;
+
+/**
+ * JMX view of a {@link Histogram}.
+ */
+public interface HistogramMBean
+{
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getMaxMicros();
+}
@@ -0,0 +1,482 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Where an import spends its time. Each pass over the POMs (versions, then dependencies) is timed and its POMs
+ * counted, and the stages within a POM record their latencies in {@link Histogram}s: resolving the model, looking up
+ * nodes, creating relationships and committing transactions. The size of each transaction, in operations, is
+ * counted as well.
+ * <p/>
+ * The size of the store is measured before and after the import, by kind of store file, to see what a change to
+ * the model costs or saves.
+ * <p/>
+ * The metrics are registered in JMX under {@link #DOMAIN}, logged as a progress line while the import runs, and
+ * written as a JSON report at the end.
+ */
+public class ImportMetrics
+    implements ImportMetricsMBean
+{
+    public static final String DOMAIN = "com.github.rickardoberg.neomvn";
+
+    public final Histogram resolve = new Histogram( "resolve" );
+    public final Histogram lookup = new Histogram( "lookup" );
+    public final Histogram relationship = new Histogram( "relationship" );
+    public final Histogram commit = new Histogram( "commit" );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final long start = System.nanoTime();
+
+    private final AtomicLong missing = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong passPoms = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong earlyCommits = new AtomicLong();
+    private final AtomicLong commitOperations = new AtomicLong();
+    private volatile long minCommitOperations = Long.MAX_VALUE;
+    private volatile long maxCommitOperations;
+    private final List<Pass> passes = new ArrayList<Pass>();
+    private volatile String pass = "";
+    private volatile long passStart = start;
+
+    private StoreSize storeBefore;
+    private StoreSize storeAfter;
+
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Start timing a new pass over the POMs, ending the current one.
+     */
+    public synchronized void startPass( String name )
+    {
+        endPass();
+        pass = name;
+        passStart = System.nanoTime();
+        passPoms.set( 0 );
+    }
+
+    public synchronized void endPass()
+    {
+        if ( pass.length() > 0 )
+            passes.add( new Pass( pass, passPoms.get(), System.nanoTime() - passStart ) );
+        pass = "";
+    }
+
+    /**
+     * A POM has been handled in the current pass.
+     */
+    public void pom()
+    {
+        passPoms.incrementAndGet();
+    }
+
+    /**
+     * A version node was created as a placeholder for a POM that is not in the repository, or marked as missing.
+     */
+    public void missing()
+    {
+        missing.incrementAndGet();
+    }
+
+    public void failure()
+    {
+        failures.incrementAndGet();
+    }
+
+    /**
+     * A transaction was committed. Only called from the writer thread.
+     *
+     * @param operations nodes, relationships, properties and index entries written in it
+     * @param early true if committed before reaching the batch size, because the heap was filling up
+     */
+    public void transaction( long operations, boolean early )
+    {
+        commits.incrementAndGet();
+        if ( early )
+            earlyCommits.incrementAndGet();
+        commitOperations.addAndGet( operations );
+        minCommitOperations = Math.min( minCommitOperations, operations );
+        maxCommitOperations = Math.max( maxCommitOperations, operations );
+    }
+
+    /**
+     * Measure the store before importing into it, or before it is created.
+     */
+    public synchronized void storeBefore( File dbPath )
+    {
+        storeBefore = new StoreSize( dbPath );
+    }
+
+    /**
+     * Measure the store after importing, once it has been shut down so everything is on disk.
+     */
+    public synchronized void storeAfter( File dbPath )
+    {
+        storeAfter = new StoreSize( dbPath );
+    }
+
+    public String getPass()
+    {
+        return pass;
+    }
+
+    public long getPassPoms()
+    {
+        return passPoms.get();
+    }
+
+    public double getPassPomsPerSecond()
+    {
+        return perSecond( passPoms.get(), System.nanoTime() - passStart );
+    }
+
+    public long getMissing()
+    {
+        return missing.get();
+    }
+
+    public long getFailures()
+    {
+        return failures.get();
+    }
+
+    public long getCommits()
+    {
+        return commits.get();
+    }
+
+    public long getEarlyCommits()
+    {
+        return earlyCommits.get();
+    }
+
+    public double getMeanCommitOperations()
+    {
+        long count = commits.get();
+        return count == 0 ? 0 : commitOperations.get() / (double) count;
+    }
+
+    public long getMaxCommitOperations()
+    {
+        return maxCommitOperations;
+    }
+
+    public long getHeapUsed()
+    {
+        return heap().getUsed();
+    }
+
+    /**
+     * @return the most heap used at any point since the JVM started, as tracked by the heap memory pools
+     */
+    public long getPeakHeapUsed()
+    {
+        long peak = 0;
+        for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+        {
+            if ( pool.getType() == MemoryType.HEAP )
+                peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    public long getHeapMax()
+    {
+        return heap().getMax();
+    }
+
+    public String getProgress()
+    {
+        return String.format( "%s: %d POMs, %.0f/s; %s; %s, %.0f operations mean; %d missing, %d failed; heap %d of %d MB",
+                pass, passPoms.get(), getPassPomsPerSecond(), resolve, commit, getMeanCommitOperations(), missing.get(),
+                failures.get(), getHeapUsed() >> 20, getHeapMax() >> 20 );
+    }
+
+    /**
+     * Register this and the histograms in the platform MBean server. Failing to do so is logged, not thrown, since
+     * the import works just as well without.
+     */
+    public synchronized void register()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            register( server, this, new ObjectName( DOMAIN + ":type=ImportMetrics" ) );
+            for ( Histogram histogram : histograms() )
+            {
+                register( server, histogram, new ObjectName( DOMAIN + ":type=ImportMetrics,name=" + histogram.getName() ) );
+            }
+        }
+        catch ( JMException e )
+        {
+            logger.warn( "Could not register import metrics in JMX", e );
+        }
+    }
+
+    public synchronized void unregister()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for ( ObjectName name : registered )
+        {
+            try
+            {
+                server.unregisterMBean( name );
+            }
+            catch ( JMException e )
+            {
+                // Already gone
+            }
+        }
+        registered.clear();
+    }
+
+    /**
+     * Log {@link #getProgress()} at an interval, on a daemon thread, until {@link #stopProgress()}.
+     */
+    public synchronized void startProgress( long interval, TimeUnit unit )
+    {
+        reporter = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "neomvn-metrics" );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+        reporter.scheduleAtFixedRate( new Runnable()
+        {
+            public void run()
+            {
+                logger.info( getProgress() );
+            }
+        }, interval, interval, unit );
+    }
+
+    public synchronized void stopProgress()
+    {
+        if ( reporter != null )
+            reporter.shutdownNow();
+        reporter = null;
+    }
+
+    /**
+     * @return one line per pass, per histogram and for the counters, for logging at the end of an import
+     */
+    public synchronized List<String> summary()
+    {
+        List<String> lines = new ArrayList<String>();
+        for ( Pass pass : passes )
+        {
+            lines.add( pass.toString() );
+        }
+        for ( Histogram histogram : histograms() )
+        {
+            lines.add( histogram.toString() );
+        }
+        if ( commits.get() > 0 )
+            lines.add( String.format( "%d commits of %d-%d operations, %.0f mean; %d early for heap", commits.get(),
+                    minCommitOperations, maxCommitOperations, getMeanCommitOperations(), earlyCommits.get() ) );
+        if ( storeAfter != null )
+            lines.add( String.format( Locale.ROOT, "store %s; was %.1f MB", storeAfter,
+                    StoreSize.mb( storeBefore.total() ) ) );
+        lines.add( String.format( "%d missing, %d failed; peak heap %d of %d MB in %.1f s", missing.get(),
+                failures.get(), getPeakHeapUsed() >> 20, getHeapMax() >> 20, (System.nanoTime() - start) / 1000000000D ) );
+        return lines;
+    }
+
+    public synchronized void writeJson( File file ) throws IOException
+    {
+        StringBuilder json = new StringBuilder();
+        json.append( "{\n" );
+        json.append( String.format( Locale.ROOT, "  \"seconds\": %.3f,\n", (System.nanoTime() - start) / 1000000000D ) );
+        json.append( "  \"passes\": [" );
+        for ( int i = 0; i < passes.size(); i++ )
+        {
+            Pass pass = passes.get( i );
+            json.append( i == 0 ? "\n" : ",\n" );
+            json.append( String.format( Locale.ROOT, "    {\"name\": \"%s\", \"poms\": %d, \"seconds\": %.3f, \"pomsPerSecond\": %.1f}",
+                    pass.name, pass.poms, pass.nanos / 1000000000D, perSecond( pass.poms, pass.nanos ) ) );
+        }
+        json.append( "\n  ],\n" );
+        json.append( "  \"latencyMicros\": {" );
+        Histogram[] histograms = histograms();
+        for ( int i = 0; i < histograms.length; i++ )
+        {
+            json.append( i == 0 ? "\n" : ",\n" );
+            json.append( "    \"" ).append( histograms[i].getName() ).append( "\": " ).append( histograms[i].toJson() );
+        }
+        json.append( "\n  },\n" );
+        json.append( String.format( Locale.ROOT, "  \"commits\": {\"count\": %d, \"early\": %d, \"minOperations\": %d, \"meanOperations\": %.1f, \"maxOperations\": %d},\n",
+                commits.get(), earlyCommits.get(), commits.get() == 0 ? 0 : minCommitOperations, getMeanCommitOperations(),
+                maxCommitOperations ) );
+        if ( storeAfter != null )
+            json.append( "  \"storeBytes\": {\"before\": " ).append( storeBefore.toJson() ).append( ", \"after\": " )
+                    .append( storeAfter.toJson() ).append( "},\n" );
+        json.append( String.format( "  \"missing\": %d,\n", missing.get() ) );
+        json.append( String.format( "  \"failures\": %d,\n", failures.get() ) );
+        json.append( String.format( "  \"heap\": {\"peakUsed\": %d, \"max\": %d}\n", getPeakHeapUsed(), getHeapMax() ) );
+        json.append( "}\n" );
+
+        Writer out = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try
+        {
+            out.write( json.toString() );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private Histogram[] histograms()
+    {
+        return new Histogram[]{resolve, lookup, relationship, commit};
+    }
+
+    private void register( MBeanServer server, Object mbean, ObjectName name ) throws JMException
+    {
+        // A second import in the same JVM takes over the names
+        if ( server.isRegistered( name ) )
+            server.unregisterMBean( name );
+        server.registerMBean( mbean, name );
+        registered.add( name );
+    }
+
+    private static MemoryUsage heap()
+    {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    }
+
+    private static double perSecond( long count, long nanos )
+    {
+        return nanos <= 0 ? 0 : count * 1000000000D / nanos;
+    }
+
+    /**
+     * Bytes in the store files of a database directory, by what they hold.
+     */
+    private static class StoreSize
+    {
+        private long nodes;
+        private long relationships;
+        private long properties;
+        private long strings;
+        private long indexes;
+        private long other;
+
+        private StoreSize( File dbPath )
+        {
+            File[] files = dbPath.listFiles();
+            if ( files == null )
+                return;
+            for ( File file : files )
+            {
+                String name = file.getName();
+                if ( file.isDirectory() )
+                {
+                    if ( name.equals( "index" ) )
+                        indexes += size( file );
+                    else
+                        other += size( file );
+                }
+                else if ( name.startsWith( "neostore.nodestore." ) )
+                    nodes += file.length();
+                else if ( name.startsWith( "neostore.relationship" ) )
+                    relationships += file.length();
+                else if ( name.startsWith( "neostore.propertystore.db.strings" )
+                        || name.startsWith( "neostore.propertystore.db.arrays" ) )
+                    strings += file.length();
+                else if ( name.startsWith( "neostore.propertystore." ) )
+                    properties += file.length();
+                else
+                    other += file.length();
+            }
+        }
+
+        private long total()
+        {
+            return nodes + relationships + properties + strings + indexes + other;
+        }
+
+        private static long size( File file )
+        {
+            if ( file.isFile() )
+                return file.length();
+            long size = 0;
+            File[] children = file.listFiles();
+            if ( children != null )
+            {
+                for ( File child : children )
+                {
+                    size += size( child );
+                }
+            }
+            return size;
+        }
+
+        private String toJson()
+        {
+            return String.format( "{\"total\": %d, \"nodes\": %d, \"relationships\": %d, \"properties\": %d, \"strings\": %d, \"indexes\": %d, \"other\": %d}",
+                    total(), nodes, relationships, properties, strings, indexes, other );
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format( Locale.ROOT, "%.1f MB: nodes %.1f, relationships %.1f, properties %.1f, strings %.1f, indexes %.1f, other %.1f",
+                    mb( total() ), mb( nodes ), mb( relationships ), mb( properties ), mb( strings ), mb( indexes ),
+                    mb( other ) );
+        }
+
+        private static double mb( long bytes )
+        {
+            return bytes / (1024D * 1024D);
+        }
+    }
+
+    private static class Pass
+    {
+        private final String name;
+        private final long poms;
+        private final long nanos;
+
+        private Pass( String name, long poms, long nanos )
+        {
+            this.name = name;
+            this.poms = poms;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format( "%s: %d POMs in %.1f s (%.0f/s)", name, poms, nanos / 1000000000D,
+                    perSecond( poms, nanos ) );
+        }
+    }
+}
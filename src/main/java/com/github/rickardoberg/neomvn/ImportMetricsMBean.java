@@ -0,0 +1,33 @@
+package com.github.rickardoberg.neomvn;
+
+/**
+ * JMX view of {@link ImportMetrics}. Latencies are registered as separate {@link HistogramMBean}s.
+ */
+public interface ImportMetricsMBean
+{
+    String getPass();
+
+    long getPassPoms();
+
+    double getPassPomsPerSecond();
+
+    long getMissing();
+
+    long getFailures();
+
+    long getCommits();
+
+    long getEarlyCommits();
+
+    double getMeanCommitOperations();
+
+    long getMaxCommitOperations();
+
+    long getHeapUsed();
+
+    long getPeakHeapUsed();
+
+    long getHeapMax();
+
+    String getProgress();
+}
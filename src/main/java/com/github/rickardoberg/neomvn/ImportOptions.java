@@ -0,0 +1,225 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Command line options of {@link Main}.
+ */
+public class ImportOptions
+{
+    public static final String USAGE = String.format(
+            "Usage: neomvn [options] [repository]%n"
+            + "%n"
+            + "The repository is a directory, \".\" by default, or a zip or tar.gz snapshot of one (.zip, .tar.gz or%n"
+            + ".tgz), imported without extracting it. Parent POMs must then be in the same archive. A zip is read in%n"
+            + "place. A tar.gz is read once when it is opened, and its POMs are copied uncompressed to a temporary file,%n"
+            + "so it needs as much free space in java.io.tmpdir as the POMs in it take uncompressed.%n"
+            + "%n"
+            + "  --db <directory>           database to write, \"neomvn\" by default%n"
+            + "  --threads <n>              threads resolving POMs%n"
+            + "  --walk-threads <n>         threads walking the repository, with --threads%n"
+            + "  --bulk                     write a new database with the batch inserter%n"
+            + "  --compact                  write the compact model%n"
+            + "  --batch-size <operations>  operations per transaction%n"
+            + "  --batch-heap <percent>     commit early above this much heap in use, 0 turns it off%n"
+            + "  --incremental              only import what changed since the last import%n"
+            + "  --watch                    keep applying changes to the repository as they happen%n"
+            + "  --watch-quiet <millis>     how long the repository has to be quiet before applying changes%n"
+            + "  --report <file>            where to write the JSON import report%n"
+            + "  --closure                  compute the transitive dependency closure after importing%n"
+            + "  --closure-only             only compute the closure of an existing database%n"
+            + "  --closure-relationships    also store the closure as relationships%n"
+            + "  --closure-exclude <scopes> comma separated scopes to leave out of the closure%n"
+            + "  --export <directory>       write CSV and CSR files instead of a database%n"
+            + "  --export-only <directory>  only export an existing database%n"
+            + "  --migrate-gav-index        add the gav key to the version index of an existing database%n"
+            + "  --help                     show this%n" );
+
+    /**
+     * Repository directory, or a zip or tar.gz snapshot of one, see {@link PomArchive}.
+     */
+    public File repository = new File( "." );
+    public File database = new File( "neomvn" );
+
+    /**
+     * Number of threads resolving POMs. With more than one, the version pass runs through an {@link ImportPipeline},
+     * and graph writes stay on the main thread.
+     */
+    public int threads = 1;
+
+    /**
+     * Number of threads walking the repository in the {@link ImportPipeline}. With more than one, POMs are imported
+     * in a different order on each run, so node ids differ even though the graph is the same.
+     */
+    public int walkThreads = 1;
+
+    /**
+     * Write the store with a {@link BatchGraphWriter} instead of through transactions.
+     */
+    public boolean bulk = false;
+
+    /**
+     * Write the {@link CompactModel} instead of the full one.
+     */
+    public boolean compact = false;
+
+    /**
+     * Operations (nodes, relationships, properties and index entries) per transaction in a
+     * {@link TransactionalGraphWriter}.
+     */
+    public int batchSize = TransactionalGraphWriter.DEFAULT_BATCH_SIZE;
+
+    /**
+     * Fraction of the maximum heap in use after garbage collection at which a {@link TransactionalGraphWriter}
+     * commits early, or 0 to only commit at the batch size.
+     */
+    public double batchHeapLimit = TransactionalGraphWriter.DEFAULT_HEAP_LIMIT;
+
+    /**
+     * Keep an existing database and only import what changed according to its {@link PomManifest}.
+     */
+    public boolean incremental = false;
+
+    /**
+     * After importing, keep watching the repository and apply changes to the graph as they happen.
+     */
+    public boolean watch = false;
+
+    /**
+     * How long the repository has to be quiet before a batch of changes is applied in watch mode.
+     */
+    public long watchQuietMillis = 2000;
+
+    /**
+     * Where to write the JSON report of {@link ImportMetrics}, by default "import-report.json" in the database
+     * directory.
+     */
+    public File report = null;
+
+    /**
+     * Compute the {@link DependencyClosure} after importing.
+     */
+    public boolean closure = false;
+
+    /**
+     * Only compute the {@link DependencyClosure} of an existing database, without importing.
+     */
+    public boolean closureOnly = false;
+
+    /**
+     * Also store the {@link DependencyClosure} as TRANSITIVELY_DEPENDS_ON relationships.
+     */
+    public boolean closureRelationships = false;
+
+    public Set<String> closureExcludedScopes = DependencyClosure.DEFAULT_EXCLUDED_SCOPES;
+
+    /**
+     * Directory to write a {@link GraphExport} to. The import writes it with an {@link ExportGraphWriter} instead of
+     * creating a database.
+     */
+    public File export = null;
+
+    /**
+     * Only export an existing database with {@link GraphExporter}, without importing.
+     */
+    public boolean exportOnly = false;
+
+    public boolean migrateGavIndex = false;
+
+    public boolean help = false;
+
+    public static ImportOptions parse( String[] args )
+    {
+        ImportOptions options = new ImportOptions();
+        for ( int i = 0; i < args.length; i++ )
+        {
+            if ( args[i].equals( "--threads" ) )
+                options.threads = Integer.parseInt( args[++i] );
+            else if ( args[i].equals( "--walk-threads" ) )
+                options.walkThreads = Integer.parseInt( args[++i] );
+            else if ( args[i].equals( "--bulk" ) )
+                options.bulk = true;
+            else if ( args[i].equals( "--compact" ) )
+                options.compact = true;
+            else if ( args[i].equals( "--batch-size" ) )
+                options.batchSize = Integer.parseInt( args[++i] );
+            else if ( args[i].equals( "--batch-heap" ) )
+                options.batchHeapLimit = Integer.parseInt( args[++i] ) / 100D;
+            else if ( args[i].equals( "--incremental" ) )
+                options.incremental = true;
+            else if ( args[i].equals( "--watch" ) )
+                options.watch = true;
+            else if ( args[i].equals( "--watch-quiet" ) )
+                options.watchQuietMillis = Long.parseLong( args[++i] );
+            else if ( args[i].equals( "--db" ) )
+                options.database = new File( args[++i] );
+            else if ( args[i].equals( "--report" ) )
+                options.report = new File( args[++i] );
+            else if ( args[i].equals( "--closure" ) )
+                options.closure = true;
+            else if ( args[i].equals( "--closure-only" ) )
+                options.closureOnly = options.closure = true;
+            else if ( args[i].equals( "--closure-relationships" ) )
+                options.closureRelationships = options.closure = true;
+            else if ( args[i].equals( "--closure-exclude" ) )
+                options.closureExcludedScopes = scopes( args[++i] );
+            else if ( args[i].equals( "--export" ) )
+                options.export = new File( args[++i] );
+            else if ( args[i].equals( "--export-only" ) )
+            {
+                options.export = new File( args[++i] );
+                options.exportOnly = true;
+            }
+            else if ( args[i].equals( "--migrate-gav-index" ) )
+                options.migrateGavIndex = true;
+            else if ( args[i].equals( "--help" ) )
+                options.help = true;
+            else if ( args[i].startsWith( "--" ) )
+                throw new IllegalArgumentException( "Unknown option " + args[i] );
+            else
+                options.repository = new File( args[i] );
+        }
+
+        if ( options.batchSize < 1 )
+            throw new IllegalArgumentException( "--batch-size must be at least 1" );
+
+        if ( options.batchHeapLimit < 0 || options.batchHeapLimit > 1 )
+            throw new IllegalArgumentException( "--batch-heap must be a percentage from 0 to 100" );
+
+        if ( options.threads < 1 || options.walkThreads < 1 )
+            throw new IllegalArgumentException( "--threads and --walk-threads must be at least 1" );
+
+        // Without the pipeline, the walker calls the graph writer directly, and that has to stay on one thread
+        if ( options.walkThreads > 1 && options.threads == 1 )
+            throw new IllegalArgumentException( "--walk-threads only applies with --threads more than 1" );
+
+        if ( options.bulk && (options.incremental || options.watch) )
+            throw new IllegalArgumentException( "--bulk can only create a new database, not update one with --incremental or --watch" );
+
+        if ( PomArchive.isArchive( options.repository ) && (options.incremental || options.watch) )
+            throw new IllegalArgumentException( "A repository archive can only be imported into a new database, not with --incremental or --watch" );
+
+        if ( options.closure && options.watch )
+            throw new IllegalArgumentException( "--closure can not be combined with --watch, run it with --closure-only after watching" );
+
+        if ( options.export != null && !options.exportOnly
+                && (options.bulk || options.compact || options.incremental || options.watch || options.closure) )
+            throw new IllegalArgumentException( "--export writes no database, so it can not be combined with --bulk, --compact, --incremental, --watch or --closure; use --export-only to export a database" );
+
+        return options;
+    }
+
+    private static Set<String> scopes( String scopes )
+    {
+        Set<String> set = new HashSet<String>();
+        for ( String scope : scopes.split( "," ) )
+        {
+            if ( scope.trim().length() > 0 )
+                set.add( scope.trim() );
+        }
+        return Collections.unmodifiableSet( set );
+    }
+}
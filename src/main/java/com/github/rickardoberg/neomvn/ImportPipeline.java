@@ -0,0 +1,279 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.model.building.FileModelSource;
+import org.apache.maven.model.building.ModelSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parallel version pass. A {@link PomSource} feeds POMs into a bounded queue, a pool of workers
+ * sharing one {@link ModelResolver} resolves them into {@link PomRecord}s, and the calling thread hands the results
+ * to a {@link Writer} in the same order the source found them. With a single walker thread, the writer sees exactly
+ * the sequence a serial import would, so the resulting graph is identical.
+ */
+public class ImportPipeline
+{
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos( 10 );
+
+    private static final Task END_OF_WALK = new Task( -1, null );
+    private static final ResolvedPom END_OF_RESULTS = new ResolvedPom( -1, null, null, null );
+
+    private final PomSource source;
+    private final ModelResolver resolver;
+    private final int threads;
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final BlockingQueue<Task> tasks;
+    private final BlockingQueue<ResolvedPom> results;
+
+    private final AtomicLong walked = new AtomicLong();
+    private final AtomicLong resolved = new AtomicLong();
+    private final AtomicLong resolveNanos = new AtomicLong();
+    private volatile Throwable walkFailure;
+
+    /**
+     * @param source where to find POMs. A {@link DirectoryPomSource} walking with more than one thread does not
+     * produce POMs in the same order between runs.
+     * @param threads number of threads resolving POMs
+     */
+    public ImportPipeline( PomSource source, ModelResolver resolver, int threads )
+    {
+        this.source = source;
+        this.resolver = resolver;
+        this.threads = threads;
+
+        tasks = new ArrayBlockingQueue<Task>( threads * 256 );
+        results = new ArrayBlockingQueue<ResolvedPom>( threads * 256 );
+    }
+
+    public void run( Writer writer ) throws IOException
+    {
+        final AtomicInteger running = new AtomicInteger( threads );
+        ExecutorService executor = Executors.newFixedThreadPool( threads + 1, new ThreadFactory()
+        {
+            private final AtomicInteger threads = new AtomicInteger();
+
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "neomvn-pipeline-" + threads.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+
+        long start = System.nanoTime();
+        long written = 0;
+        long writeNanos = 0;
+        try
+        {
+            executor.submit( new Runnable()
+            {
+                public void run()
+                {
+                    walk();
+                }
+            } );
+            for ( int i = 0; i < threads; i++ )
+            {
+                executor.submit( new Runnable()
+                {
+                    public void run()
+                    {
+                        resolve( running );
+                    }
+                } );
+            }
+
+            // Results arrive out of order, so park them until everything before them has been written
+            Map<Long, ResolvedPom> pending = new HashMap<Long, ResolvedPom>();
+            long lastProgress = System.nanoTime();
+            while ( true )
+            {
+                ResolvedPom pom = results.poll( 1, TimeUnit.SECONDS );
+                if ( pom == END_OF_RESULTS )
+                    break;
+
+                if ( pom != null )
+                {
+                    pending.put( pom.sequence, pom );
+
+                    ResolvedPom next;
+                    while ( (next = pending.remove( written )) != null )
+                    {
+                        long writeStart = System.nanoTime();
+                        writer.write( next );
+                        writeNanos += System.nanoTime() - writeStart;
+                        written++;
+                    }
+                }
+
+                if ( System.nanoTime() - lastProgress > PROGRESS_INTERVAL )
+                {
+                    lastProgress = System.nanoTime();
+                    logger.info( "Walked {}, resolved {}, written {} POMs (queued {}, waiting {})",
+                            walked.get(), resolved.get(), written, tasks.size(), pending.size() );
+                }
+            }
+
+            if ( walkFailure != null )
+                throw new IOException( "Could not walk " + source, walkFailure );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Import interrupted" );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        logger.info( "Walker: {}", source );
+        logger.info( "Resolvers ({} threads): {} POMs in {}, {} ms/POM per thread", threads, resolved.get(),
+                rate( resolved.get(), elapsed ), String.format( "%.2f", millisPer( resolveNanos.get(), resolved.get() ) ) );
+        logger.info( "Writer: {} POMs in {}, {} ms/POM", written, rate( written, elapsed ),
+                String.format( "%.2f", millisPer( writeNanos, written ) ) );
+    }
+
+    private void walk()
+    {
+        try
+        {
+            source.visit( new PomSource.Visitor()
+            {
+                public void visit( ModelSource pom ) throws InterruptedException
+                {
+                    tasks.put( new Task( walked.getAndIncrement(), pom ) );
+                }
+            } );
+        }
+        catch ( InterruptedException e )
+        {
+            return;
+        }
+        catch ( Throwable e )
+        {
+            walkFailure = e;
+        }
+
+        try
+        {
+            tasks.put( END_OF_WALK );
+        }
+        catch ( InterruptedException e )
+        {
+            // Shutting down
+        }
+    }
+
+    private void resolve( AtomicInteger running )
+    {
+        try
+        {
+            while ( true )
+            {
+                Task task = tasks.take();
+                if ( task == END_OF_WALK )
+                {
+                    // Let the other workers see it too
+                    tasks.put( END_OF_WALK );
+                    if ( running.decrementAndGet() == 0 )
+                        results.put( END_OF_RESULTS );
+                    return;
+                }
+
+                long start = System.nanoTime();
+                ResolvedPom pom;
+                try
+                {
+                    pom = new ResolvedPom( task.sequence, task.source, resolver.record( task.source ), null );
+                }
+                catch ( Throwable e )
+                {
+                    pom = new ResolvedPom( task.sequence, task.source, null, e );
+                }
+                resolveNanos.addAndGet( System.nanoTime() - start );
+                resolved.incrementAndGet();
+
+                results.put( pom );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            // Shutting down
+        }
+    }
+
+    private static String rate( long count, long nanos )
+    {
+        double seconds = nanos / 1000000000D;
+        return String.format( "%.1fs (%.0f/s)", seconds, seconds == 0 ? 0 : count / seconds );
+    }
+
+    private static double millisPer( long nanos, long count )
+    {
+        return count == 0 ? 0 : nanos / 1000000D / count;
+    }
+
+    /**
+     * Receives resolved POMs on the thread that called {@link ImportPipeline#run(Writer)}, in repository walk order.
+     */
+    public interface Writer
+    {
+        void write( ResolvedPom pom ) throws IOException;
+    }
+
+    /**
+     * Outcome of resolving one POM: either a record or the failure that prevented it.
+     */
+    public static class ResolvedPom
+    {
+        public final long sequence;
+        public final ModelSource source;
+        public final PomRecord record;
+        public final Throwable failure;
+
+        public ResolvedPom( long sequence, ModelSource source, PomRecord record, Throwable failure )
+        {
+            this.sequence = sequence;
+            this.source = source;
+            this.record = record;
+            this.failure = failure;
+        }
+
+        /**
+         * @return the POM file, or null if the POM is not a file, as in an archive
+         */
+        public File getPomFile()
+        {
+            return source instanceof FileModelSource ? ((FileModelSource) source).getPomFile() : null;
+        }
+    }
+
+    private static class Task
+    {
+        private final long sequence;
+        private final ModelSource source;
+
+        private Task( long sequence, ModelSource source )
+        {
+            this.sequence = sequence;
+            this.source = source;
+        }
+    }
+}
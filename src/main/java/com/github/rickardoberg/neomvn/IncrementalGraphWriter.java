@@ -0,0 +1,15 @@
+package com.github.rickardoberg.neomvn;
+
+/**
+ * A {@link GraphWriter} that can update an existing store, as the incremental import and watch mode do, rather than
+ * only create a new one.
+ */
+public interface IncrementalGraphWriter
+    extends GraphWriter
+{
+    /**
+     * Turn the version node of a POM that no longer exists back into a placeholder marked as missing, and remove its
+     * dependencies. The node itself stays, since other versions may depend on it.
+     */
+    void remove( String groupId, String artifactId, String version );
+}
@@ -0,0 +1,102 @@
+package com.github.rickardoberg.neomvn;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.model.building.ModelCache;
+
+/**
+ * Bounded {@link ModelCache} shared by all model builds. The model builder stores raw parent models and the
+ * interpolated dependency management of import-scope POMs here, keyed by GAV, so common parents such as
+ * org.apache:apache are read and parsed once instead of once per child POM. The least recently used entries are
+ * evicted once the cache is full.
+ */
+public class LruModelCache
+    implements ModelCache
+{
+    private final Map<String, Object> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public LruModelCache( final int maxEntries )
+    {
+        cache = new LinkedHashMap<String, Object>( 1024, 0.75F, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Object> eldest )
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public void put( String groupId, String artifactId, String version, String tag, Object data )
+    {
+        String key = key( groupId, artifactId, version, tag );
+        synchronized ( cache )
+        {
+            cache.put( key, data );
+        }
+    }
+
+    public Object get( String groupId, String artifactId, String version, String tag )
+    {
+        String key = key( groupId, artifactId, version, tag );
+        Object data;
+        synchronized ( cache )
+        {
+            data = cache.get( key );
+        }
+
+        if ( data == null )
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return data;
+    }
+
+    /**
+     * Drop all cached models, for when POMs in the repository have changed.
+     */
+    public void clear()
+    {
+        synchronized ( cache )
+        {
+            cache.clear();
+        }
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public int size()
+    {
+        synchronized ( cache )
+        {
+            return cache.size();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return String.format( "%d hits, %d misses (%.1f%% hit ratio), %d entries", hits, getMisses(),
+                lookups == 0 ? 0D : hits * 100D / lookups, size() );
+    }
+
+    private static String key( String groupId, String artifactId, String version, String tag )
+    {
+        return groupId + ':' + artifactId + ':' + version + ':' + tag;
+    }
+}
@@ -1,25 +1,17 @@
 package com.github.rickardoberg.neomvn;
 
 import java.io.File;
-import java.io.FileFilter;
-import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.parsers.ParserConfigurationException;
 
-import org.apache.maven.model.Dependency;
-import org.apache.maven.model.Model;
-import org.neo4j.graphdb.Direction;
-import org.neo4j.graphdb.DynamicRelationshipType;
-import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.Transaction;
-import org.neo4j.graphdb.factory.GraphDatabaseFactory;
-import org.neo4j.graphdb.index.Index;
-import org.neo4j.graphdb.index.IndexHits;
+import org.apache.maven.model.building.FileModelSource;
+import org.apache.maven.model.building.ModelSource;
 import org.neo4j.kernel.impl.util.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,90 +19,175 @@ import org.xml.sax.SAXException;
 
 public class Main
 {
-    private final GraphDatabaseService graphDatabaseService;
+    private static final String MAVEN_REPOSITORY = "http://repo1.maven.org/maven2";
+    // Parents and imports missing from the repository are downloaded one at a time, while the import waits for them
+    private static final int DOWNLOADS = 1;
+    private static final double REQUESTS_PER_SECOND = 20;
+    private static final int RETRIES = 3;
+    private static final long RETRY_DELAY_MILLIS = 500;
+    private static final long MAX_WATCH_DELAY = 30000;
+    private static final long PROGRESS_INTERVAL_SECONDS = 10;
+    private static final String REPORT_FILE_NAME = "import-report.json";
+
     private final File repository;
     private final Logger logger;
-    private Index<Node> groups;
-    private Index<Node> artifacts;
-    private Index<Node> versions;
-    private DynamicRelationshipType has_artifact;
-    private final DynamicRelationshipType has_version;
-    private DynamicRelationshipType has_dependency;
 
     private ModelResolver modelResolver;
+    private GraphWriter writer;
+    // The same writer when it can update a store, for incremental imports and watch mode. Null with --bulk or --export
+    private IncrementalGraphWriter incrementalWriter;
+    private PomManifest manifest;
+    // Whether the repository is being updated by others while it is imported, see visitPom()
+    private boolean live;
+    private final ImportMetrics metrics = new ImportMetrics();
 
-    private Transaction tx;
     private int count = 0;
 
+    // Set by the shutdown hook to stop watching, see watch()
+    private final Object watchLock = new Object();
+    private boolean stopWatching;
+    private boolean waitingForChanges;
+
     private List<String> failedPoms = new ArrayList<String>(  );
 
     public static void main( String[] args ) throws ParserConfigurationException, IOException, SAXException
     {
-        if (args.length == 1)
-            new Main(new File(args[0]));
-        else
-            new Main(new File("."));
+        ImportOptions options = ImportOptions.parse( args );
+        if ( options.help )
+        {
+            System.out.print( ImportOptions.USAGE );
+            return;
+        }
+        DownloadEngine.keepAliveConnections( DOWNLOADS );
+        if ( options.migrateGavIndex )
+        {
+            GavIndexMigration.main( new String[]{options.database.getPath()} );
+            return;
+        }
+
+        if ( !options.closureOnly && !options.exportOnly )
+            new Main( options );
+        // Once the import has shut down its writer, so a store written with --bulk can be opened
+        if ( options.closure )
+            DependencyClosure.run( options );
+        if ( options.exportOnly )
+            GraphExporter.run( options );
     }
 
     public Main(File repository) throws ParserConfigurationException, IOException, SAXException
     {
-        modelResolver = new ModelResolver( new RepositoryModelResolver(repository, "http://repo1.maven.org/maven2") );
+        this( options( repository ) );
+    }
 
-        File dbPath = new File("neomvn");
-        dbPath.mkdir();
+    public Main(ImportOptions options) throws ParserConfigurationException, IOException, SAXException
+    {
+        this.repository = options.repository;
+        logger = LoggerFactory.getLogger( getClass() );
 
-        FileUtils.deleteRecursively( dbPath );
+        // An export is written instead of a database, and gets the report instead
+        boolean export = options.export != null;
+        File dbPath = export ? options.export : options.database;
+        File manifestFile = new File( dbPath, PomManifest.FILE_NAME );
+        boolean incremental = options.incremental && manifestFile.exists();
+        if ( options.incremental && !incremental )
+            logger.info( "No manifest in {}, importing everything", dbPath );
 
-        graphDatabaseService = new GraphDatabaseFactory().newEmbeddedDatabase( dbPath.getAbsolutePath() );
-        groups = graphDatabaseService.index().forNodes( "groups" );
-        artifacts = graphDatabaseService.index().forNodes( "artifacts" );
-        versions = graphDatabaseService.index().forNodes( "versions" );
+        if ( export )
+        {
+            writer = new ExportGraphWriter( dbPath, metrics );
+        }
+        else
+        {
+            if ( !incremental )
+            {
+                dbPath.mkdir();
+                FileUtils.deleteRecursively( dbPath );
+            }
 
-        has_artifact = DynamicRelationshipType.withName( "HAS_ARTIFACT" );
-        has_version = DynamicRelationshipType.withName( "HAS_VERSION" );
-        has_dependency = DynamicRelationshipType.withName( "HAS_DEPENDENCY" );
+            metrics.storeBefore( dbPath );
+            if ( options.bulk )
+            {
+                writer = new BatchGraphWriter( dbPath, metrics, options.compact );
+            }
+            else
+            {
+                TransactionalGraphWriter transactionalWriter = new TransactionalGraphWriter( dbPath, metrics,
+                        options.batchSize, options.batchHeapLimit, options.compact );
+                if ( incremental )
+                    transactionalWriter.load();
+                writer = incrementalWriter = transactionalWriter;
+            }
+        }
 
-        logger = LoggerFactory.getLogger( getClass() );
-        this.repository = repository;
+        manifest = incremental ? PomManifest.load( manifestFile ) : new PomManifest();
+        live = incremental || options.watch;
 
-        try
+        // A repository snapshot is read in place, and parents can only come from the same snapshot
+        PomArchive archive = null;
+        DownloadEngine engine = null;
+        if ( PomArchive.isArchive( repository ) )
+        {
+            archive = PomArchive.open( repository );
+            logger.info( "Archive: {}", archive );
+            modelResolver = new ModelResolver( new RepositoryModelResolver( archive ), metrics );
+        }
+        else
         {
-            tx = graphDatabaseService.beginTx();
+            engine = new DownloadEngine( DOWNLOADS, REQUESTS_PER_SECOND, RETRIES, RETRY_DELAY_MILLIS );
+            modelResolver = new ModelResolver( new RepositoryModelResolver( repository, MAVEN_REPOSITORY, engine ),
+                    metrics );
+        }
+
+        metrics.register();
+        metrics.startProgress( PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS );
 
-            // Add versions
+        PomRecordBuffer poms = new PomRecordBuffer( Runtime.getRuntime().maxMemory() / 4 );
+        try
+        {
+            // Add versions. Each POM is resolved once, and what the dependency pass needs is kept in the buffer
             logger.info( "Versions" );
-            visitPoms( repository, new Visitor<Model>()
-            {
-                public void accept( Model model )
-                {
-                    String groupId = getGroupId( model );
-                    String artifactId = model.getArtifactId();
-                    String version = getVersion( model );
-                    String name = model.getName();
-                    if (name == null)
-                        name = artifactId;
-                    artifact( groupId, artifactId, version, name);
-                }
-            });
+            metrics.startPass( "versions" );
+            if ( incremental )
+                visitChangedPoms( poms );
+            else if ( options.threads > 1 )
+                visitPoms( archive != null ? archive : new DirectoryPomSource( repository, options.walkThreads ),
+                        options.threads, poms );
+            else
+                visitPoms( archive != null ? archive : new DirectoryPomSource( repository, 1 ), poms );
 
             // Add dependencies
-            logger.info( "Dependencies" );
-            visitPoms( repository, new Visitor<Model>()
-            {
-                public void accept( Model item )
-                {
-                    dependencies( item );
-                }
-            } );
+            logger.info( "Dependencies ({} POMs{})", poms.size(), poms.isSpilled() ? ", spilled to disk" : "" );
+            dependencies( poms );
 
-            tx.success();
-            tx.finish();
+            writer.finish();
+            // An archive does not change, and an export can not be updated, so there is nothing to compare with later
+            if ( archive == null && !export )
+                manifest.save( manifestFile );
+
+            if ( options.watch )
+            {
+                // The store is still open, so its size is what has reached the disk so far
+                metrics.storeAfter( dbPath );
+                report( options, dbPath );
+                watch( manifestFile, options.watchQuietMillis );
+            }
         }
         finally
         {
-            graphDatabaseService.shutdown();
+            metrics.stopProgress();
+            metrics.unregister();
+            poms.close();
+            writer.shutdown();
+            if ( archive != null )
+                archive.close();
+            if ( engine != null )
+                engine.shutdown();
         }
 
+        if ( !export )
+            metrics.storeAfter( dbPath );
+        report( options, dbPath );
+
         System.err.println( "Failed POM files" );
         for ( String failedPom : failedPoms )
         {
@@ -118,196 +195,268 @@ public class Main
         }
     }
 
-    private void visitPoms( File repository, Visitor<Model> visitor) throws IOException, SAXException
+    private void report( ImportOptions options, File dbPath ) throws IOException
+    {
+        logger.info( "POM reader: {}", modelResolver );
+        logger.info( "Model cache: {}", modelResolver.getCache() );
+        for ( String line : metrics.summary() )
+        {
+            logger.info( line );
+        }
+        metrics.writeJson( options.report != null ? options.report : new File( dbPath, REPORT_FILE_NAME ) );
+    }
+
+    private static ImportOptions options( File repository )
+    {
+        ImportOptions options = new ImportOptions();
+        options.repository = repository;
+        return options;
+    }
+
+    private void visitChangedPoms( PomRecordBuffer poms ) throws IOException
+    {
+        PomManifest.Changes changes = manifest.changes( repository );
+        logger.info( "{} new or changed POMs, {} removed POMs since last import", changes.changed.size(), changes.removed.size() );
+        visitChanges( changes, poms );
+    }
+
+    /**
+     * Apply changes to the repository as they happen, until interrupted or the JVM is shut down. Each batch of
+     * changes is written the same way as an incremental import, and committed along with the manifest.
+     * <p/>
+     * On shutdown, such as on Ctrl-C, the JVM waits for the watch to stop, so the writer is shut down cleanly and the
+     * report is written. A batch that is being written is finished first, since interrupting the store while it
+     * writes could leave it needing recovery.
+     */
+    private void watch( File manifestFile, long quietMillis ) throws IOException
     {
-        if ( repository.isDirectory() )
+        RepositoryWatcher watcher = new RepositoryWatcher( repository, quietMillis, MAX_WATCH_DELAY );
+        final Thread watchThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook( new Thread( "neomvn-watch-shutdown" )
         {
-            File[] directories = repository.listFiles( new FileFilter()
+            @Override
+            public void run()
             {
-                public boolean accept( File pathname )
+                synchronized ( watchLock )
                 {
-                    return pathname.isDirectory();
+                    stopWatching = true;
+                    if ( waitingForChanges )
+                        watchThread.interrupt();
+                }
+                try
+                {
+                    watchThread.join();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
                 }
-            } );
-
-            for ( File directory : directories )
-            {
-                visitPoms( directory, visitor );
             }
+        } );
 
-            File[] poms = repository.listFiles( new FilenameFilter()
+        try
+        {
+            while ( true )
             {
-                public boolean accept( File dir, String name )
+                Set<File> touched;
+                synchronized ( watchLock )
                 {
-                    return name.endsWith( ".pom" );
+                    if ( stopWatching )
+                        break;
+                    waitingForChanges = true;
+                }
+                try
+                {
+                    touched = watcher.nextBatch();
+                }
+                finally
+                {
+                    synchronized ( watchLock )
+                    {
+                        waitingForChanges = false;
+                        // An interrupt from the shutdown hook that came just as the batch was closed
+                        if ( stopWatching )
+                            Thread.interrupted();
+                    }
                 }
-            } );
 
-            for ( File pom : poms )
-            {
-                visitPom( pom, visitor );
-                count++;
+                PomManifest.Changes changes = manifest.changes( repository, touched );
+                if ( changes.changed.isEmpty() && changes.removed.isEmpty() )
+                {
+                    manifest.save( manifestFile );
+                    continue;
+                }
+
+                logger.info( "{} new or changed POMs, {} removed POMs", changes.changed.size(), changes.removed.size() );
 
-                if (count%1000 == 0)
+                // Changed parents must be read again
+                modelResolver.getCache().clear();
+
+                PomRecordBuffer poms = new PomRecordBuffer( Runtime.getRuntime().maxMemory() / 4 );
+                try
                 {
-                    tx.success();
-                    tx.finish();
-                    tx=graphDatabaseService.beginTx();
+                    metrics.startPass( "changes" );
+                    visitChanges( changes, poms );
+                    dependencies( poms );
+                    writer.finish();
+                    manifest.save( manifestFile );
+                }
+                finally
+                {
+                    poms.close();
                 }
             }
         }
-    }
-
-    private void visitPom( File pomfile, Visitor<Model> visitor )
-    {
-        try
+        catch ( InterruptedException e )
         {
-            Model model = modelResolver.resolve( pomfile );
-
-            visitor.accept( model );
+            // Shutting down is not an interrupt the caller has to know about, and would only get in the way of it
+            if ( !stopWatching )
+                Thread.currentThread().interrupt();
         }
-        catch ( Throwable e )
+        finally
         {
-            LoggerFactory.getLogger( getClass() ).warn( "Could not handle: " + pomfile, e );
-            pomfile.delete();
-            failedPoms.add( pomfile.getAbsolutePath() );
+            watcher.close();
         }
     }
 
-    private Node artifact( String groupId, String artifactId, String version, String name )
+    private void visitChanges( PomManifest.Changes changes, PomRecordBuffer poms ) throws IOException
     {
-        logger.info(groupId+" "+artifactId+" "+ version );
-
-        Node groupIdNode = groups.get( "groupId", groupId ).getSingle();
-        if (groupIdNode == null)
+        for ( PomManifest.Entry removed : changes.removed )
         {
-            groupIdNode = graphDatabaseService.createNode();
-            groupIdNode.setProperty( "groupId", groupId );
-            autoIndex( groups, groupIdNode );
+            remove( removed.gav );
         }
 
-        Node artifactIdNode = artifacts.get( "artifactId", artifactId ).getSingle();
-        if (artifactIdNode == null)
+        for ( File pomFile : changes.changed )
         {
-            artifactIdNode = graphDatabaseService.createNode();
-            artifactIdNode.setProperty( "groupId", groupId );
-            artifactIdNode.setProperty( "artifactId", artifactId );
-            autoIndex( artifacts, artifactIdNode );
+            visitPom( resolve( new FileModelSource( pomFile ) ), poms );
         }
-
-        Node versionNode = graphDatabaseService.createNode();
-        versionNode.setProperty( "groupId", groupId );
-        versionNode.setProperty( "artifactId", artifactId );
-        versionNode.setProperty( "version", version );
-        artifactIdNode.setProperty( "name", name );
-        versionNode.setProperty( "name", name );
-
-        autoIndex( versions, versionNode);
-
-        if (artifactIdNode.getSingleRelationship( has_artifact, Direction.INCOMING ) == null)
-        {
-            groupIdNode.createRelationshipTo( artifactIdNode, has_artifact );
-        }
-
-        artifactIdNode.createRelationshipTo( versionNode, has_version );
-
-        return versionNode;
     }
 
-    private void autoIndex( Index<Node> versions, Node node )
+    private void visitPoms( PomSource source, final PomRecordBuffer poms ) throws IOException
     {
-        for ( String property : node.getPropertyKeys() )
+        try
         {
-            versions.add(node, property, node.getProperty( property ));
+            source.visit( new PomSource.Visitor()
+            {
+                public void visit( ModelSource pom ) throws IOException
+                {
+                    visitPom( resolve( pom ), poms );
+                }
+            } );
         }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Import interrupted" );
+        }
+        logger.info( "Walker: {}", source );
     }
 
-    private String getVersion( Model model )
+    private void visitPoms( PomSource source, int threads, final PomRecordBuffer poms ) throws IOException
     {
-        if (model.getVersion() == null)
-            return model.getParent().getVersion();
-        else
-            return model.getVersion();
+        new ImportPipeline( source, modelResolver, threads ).run( new ImportPipeline.Writer()
+        {
+            public void write( ImportPipeline.ResolvedPom pom ) throws IOException
+            {
+                visitPom( pom, poms );
+            }
+        } );
     }
 
-    private String getGroupId( Model model )
+    private ImportPipeline.ResolvedPom resolve( ModelSource source )
     {
-        if (model.getGroupId() == null)
-            return model.getParent().getGroupId();
-        else
-            return model.getGroupId();
+        try
+        {
+            return new ImportPipeline.ResolvedPom( count++, source, modelResolver.record( source ), null );
+        }
+        catch ( Throwable e )
+        {
+            return new ImportPipeline.ResolvedPom( count++, source, null, e );
+        }
     }
 
-    private void dependencies( final Model model )
+    private void visitPom( ImportPipeline.ResolvedPom resolved, PomRecordBuffer poms ) throws IOException
     {
-        Transaction tx = graphDatabaseService.beginTx();
-        try
+        PomRecord pom = resolved.record;
+        Throwable failure = resolved.failure;
+        if ( pom != null )
         {
-            visitVersion( getGroupId( model ), model.getArtifactId(), getVersion( model ), new Visitor<Node>()
+            try
             {
-                public void accept( final Node versionNode )
-                {
-                    // Found artifact, now add dependencies
-                    for ( final Dependency dependency : model.getDependencies() )
-                    {
-                        visitVersion( dependency.getGroupId(), dependency.getArtifactId(), getVersion( dependency ),
-                                new Visitor<Node>()
-                                {
-                                    public void accept( Node dependencyVersionNode )
-                                    {
-                                        Relationship dependencyRel = versionNode.createRelationshipTo(
-                                                dependencyVersionNode, has_dependency );
-
-                                        dependencyRel.setProperty( "scope", withDefault(dependency.getScope(), "compile" ));
-                                        dependencyRel.setProperty( "optional", withDefault(dependency.isOptional(), Boolean.FALSE ));
-                                    }
-                                } );
-                    }
-                }
-            } );
+                writer.version( pom );
+            }
+            catch ( Throwable e )
+            {
+                failure = e;
+            }
+        }
 
-            tx.success();
-        } finally
+        File pomFile = resolved.getPomFile();
+        if ( failure == null )
         {
-            tx.finish();
+            poms.add( pom );
+            if ( pomFile != null )
+            {
+                // A changed POM may declare other coordinates now, and then the version it declared before is gone
+                PomManifest.Entry previous = manifest.add( repository, pomFile, pom );
+                if ( previous != null && !previous.gav.equals( pom.toString() ) )
+                    remove( previous.gav );
+            }
         }
-    }
-
-    private String getVersion( final Dependency dependency )
-    {
-        String version = dependency.getVersion();
-        if (version.startsWith( "[" ))
+        else if ( pomFile == null )
+        {
+            LoggerFactory.getLogger( getClass() ).warn( "Could not handle: " + resolved.source.getLocation(), failure );
+            failedPoms.add( resolved.source.getLocation() );
+            metrics.failure();
+        }
+        else if ( live )
         {
-            version = version.substring( 1, version.indexOf( "," ) );
+            // Maybe still being written. It is left alone, and so are its manifest entry and what was imported from
+            // it before, so the next change to it, or the next incremental import, tries it again
+            LoggerFactory.getLogger( getClass() ).warn( "Could not handle: " + pomFile, failure );
+            failedPoms.add( pomFile.getAbsolutePath() );
+            metrics.failure();
         }
-        return version;
+        else
+        {
+            LoggerFactory.getLogger( getClass() ).warn( "Could not handle: " + pomFile, failure );
+            pomFile.delete();
+            failedPoms.add( pomFile.getAbsolutePath() );
+            metrics.failure();
+        }
+
+        writer.batch();
+        metrics.pom();
     }
 
-    private boolean visitVersion( String groupId, String artifactId, String version, Visitor<Node> visitor )
+    private void dependencies( PomRecordBuffer poms ) throws IOException
     {
-        IndexHits<Node> versionNodes = versions.get( "version", version );
-        try
+        metrics.startPass( "dependencies" );
+        poms.visit( new Visitor<PomRecord>()
         {
-            for ( Node versionNode : versionNodes )
+            public void accept( PomRecord pom )
             {
-                if (versionNode.getProperty( "artifactId" ).equals( artifactId ) && versionNode.getProperty( "groupId" ).equals( groupId ))
+                try
                 {
-                    visitor.accept( versionNode );
-                    return true;
+                    writer.dependencies( pom );
                 }
+                catch ( Throwable e )
+                {
+                    logger.warn( "Could not add dependencies of: " + pom, e );
+                    failedPoms.add( pom.toString() );
+                    metrics.failure();
+                }
+                writer.batch();
+                metrics.pom();
             }
+        } );
+        metrics.endPass();
+    }
 
-            // Broken lookup - create fake node and mark as
-            Node fakeNode = artifact( groupId, artifactId, version, artifactId );
-            fakeNode.setProperty( "missing", true );
-            visitor.accept( fakeNode );
-
-            return false;
-        }
-        finally
-        {
-            versionNodes.close();
-        }
+    private void remove( String gav )
+    {
+        String[] coordinates = gav.split( ":", 3 );
+        incrementalWriter.remove( coordinates[0], coordinates[1], coordinates[2] );
     }
 
     private File pomFor(String groupId, String artifactId, String versionId)
@@ -0,0 +1,253 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A file accessed through memory mapped segments, so that it can be larger than one mapping and is written at the
+ * speed of the page cache without any of it on the heap. Values are big-endian, and can be written or read either
+ * at the current position, which moves past them, or at any offset.
+ * <p/>
+ * A writable file grows as it is used, since mapping past the end extends it, and is truncated to the highest
+ * offset written or read when closed. Offsets that were skipped read as zero.
+ */
+public class MappedFile
+    implements Closeable
+{
+    private static final int SEGMENT_BITS = 26;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final boolean writable;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[16];
+    private long length;
+    private long position;
+
+    /**
+     * @param writable create or overwrite the file, otherwise only read an existing one
+     */
+    public MappedFile( File file, boolean writable ) throws IOException
+    {
+        this.file = new RandomAccessFile( file, writable ? "rw" : "r" );
+        this.writable = writable;
+        channel = this.file.getChannel();
+        if ( writable )
+            channel.truncate( 0 );
+        else
+            length = channel.size();
+    }
+
+    public long length()
+    {
+        return length;
+    }
+
+    public long position()
+    {
+        return position;
+    }
+
+    public void position( long position )
+    {
+        this.position = position;
+    }
+
+    public void putByte( long at, int value ) throws IOException
+    {
+        segment( at, 1 ).put( (int) (at & SEGMENT_MASK), (byte) value );
+    }
+
+    public void putInt( long at, int value ) throws IOException
+    {
+        int offset = (int) (at & SEGMENT_MASK);
+        if ( offset <= SEGMENT_SIZE - 4 )
+        {
+            segment( at, 4 ).putInt( offset, value );
+            return;
+        }
+        for ( int i = 0; i < 4; i++ )
+        {
+            putByte( at + i, value >>> (24 - i * 8) );
+        }
+    }
+
+    public void putLong( long at, long value ) throws IOException
+    {
+        int offset = (int) (at & SEGMENT_MASK);
+        if ( offset <= SEGMENT_SIZE - 8 )
+        {
+            segment( at, 8 ).putLong( offset, value );
+            return;
+        }
+        putInt( at, (int) (value >>> 32) );
+        putInt( at + 4, (int) value );
+    }
+
+    public int getByte( long at ) throws IOException
+    {
+        return segment( at, 1 ).get( (int) (at & SEGMENT_MASK) );
+    }
+
+    public int getInt( long at ) throws IOException
+    {
+        int offset = (int) (at & SEGMENT_MASK);
+        if ( offset <= SEGMENT_SIZE - 4 )
+            return segment( at, 4 ).getInt( offset );
+        int value = 0;
+        for ( int i = 0; i < 4; i++ )
+        {
+            value = (value << 8) | (getByte( at + i ) & 0xFF);
+        }
+        return value;
+    }
+
+    public long getLong( long at ) throws IOException
+    {
+        int offset = (int) (at & SEGMENT_MASK);
+        if ( offset <= SEGMENT_SIZE - 8 )
+            return segment( at, 8 ).getLong( offset );
+        return ((long) getInt( at ) << 32) | (getInt( at + 4 ) & 0xFFFFFFFFL);
+    }
+
+    public void put( long at, byte[] bytes, int offset, int length ) throws IOException
+    {
+        while ( length > 0 )
+        {
+            int segmentOffset = (int) (at & SEGMENT_MASK);
+            int chunk = Math.min( length, SEGMENT_SIZE - segmentOffset );
+            ByteBuffer segment = segment( at, chunk ).duplicate();
+            segment.position( segmentOffset );
+            segment.put( bytes, offset, chunk );
+            at += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    public void get( long at, byte[] bytes, int offset, int length ) throws IOException
+    {
+        while ( length > 0 )
+        {
+            int segmentOffset = (int) (at & SEGMENT_MASK);
+            int chunk = Math.min( length, SEGMENT_SIZE - segmentOffset );
+            ByteBuffer segment = segment( at, chunk ).duplicate();
+            segment.position( segmentOffset );
+            segment.get( bytes, offset, chunk );
+            at += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    public void putByte( int value ) throws IOException
+    {
+        putByte( position, value );
+        position += 1;
+    }
+
+    public void putInt( int value ) throws IOException
+    {
+        putInt( position, value );
+        position += 4;
+    }
+
+    public void putLong( long value ) throws IOException
+    {
+        putLong( position, value );
+        position += 8;
+    }
+
+    public void put( byte[] bytes, int offset, int length ) throws IOException
+    {
+        put( position, bytes, offset, length );
+        position += length;
+    }
+
+    public int getByte() throws IOException
+    {
+        int value = getByte( position );
+        position += 1;
+        return value;
+    }
+
+    public int getInt() throws IOException
+    {
+        int value = getInt( position );
+        position += 4;
+        return value;
+    }
+
+    public long getLong() throws IOException
+    {
+        long value = getLong( position );
+        position += 8;
+        return value;
+    }
+
+    public void get( byte[] bytes, int offset, int length ) throws IOException
+    {
+        get( position, bytes, offset, length );
+        position += length;
+    }
+
+    /**
+     * Copy bytes from another file, at its position and then this one, moving both.
+     */
+    public void copy( MappedFile from, long length ) throws IOException
+    {
+        byte[] buffer = new byte[1 << 16];
+        while ( length > 0 )
+        {
+            int chunk = (int) Math.min( length, buffer.length );
+            from.get( buffer, 0, chunk );
+            put( buffer, 0, chunk );
+            length -= chunk;
+        }
+    }
+
+    public void close() throws IOException
+    {
+        // The segments are unmapped when collected, which truncating does not have to wait for
+        segments = null;
+        try
+        {
+            if ( writable )
+                channel.truncate( length );
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    private MappedByteBuffer segment( long at, int size ) throws IOException
+    {
+        if ( writable )
+            length = Math.max( length, at + size );
+        else if ( at < 0 || at + size > length )
+            throw new IOException( "Read past the end of the file at " + at );
+
+        int index = (int) (at >>> SEGMENT_BITS);
+        if ( index >= segments.length )
+            segments = Arrays.copyOf( segments, Math.max( index + 1, segments.length * 2 ) );
+        MappedByteBuffer segment = segments[index];
+        if ( segment == null )
+        {
+            long start = (long) index << SEGMENT_BITS;
+            if ( writable )
+                segment = channel.map( FileChannel.MapMode.READ_WRITE, start, SEGMENT_SIZE );
+            else
+                segment = channel.map( FileChannel.MapMode.READ_ONLY, start, Math.min( SEGMENT_SIZE, length - start ) );
+            segments[index] = segment;
+        }
+        return segment;
+    }
+}
@@ -1,67 +1,156 @@
 package com.github.rickardoberg.neomvn;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.maven.model.Model;
 import org.apache.maven.model.building.DefaultModelBuilder;
 import org.apache.maven.model.building.DefaultModelBuilderFactory;
 import org.apache.maven.model.building.DefaultModelBuildingRequest;
+import org.apache.maven.model.building.FileModelSource;
 import org.apache.maven.model.building.ModelBuildingRequest;
+import org.apache.maven.model.building.ModelBuildingResult;
 import org.apache.maven.model.building.ModelProblemCollector;
+import org.apache.maven.model.building.ModelSource;
 import org.apache.maven.model.validation.ModelValidator;
 
+/**
+ * Builds effective models. A single instance is safe to use from several threads: the model builder is created once
+ * and shared, and parent and import POMs are cached in an {@link LruModelCache}.
+ * <p/>
+ * {@link #record(File)} reads POMs that are complete on their own with a {@link PomReader}, and only builds the
+ * effective model for the rest.
+ */
 public class ModelResolver
 {
-    private RepositoryModelResolver resolver;
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+
+    private final RepositoryModelResolver resolver;
+    private final DefaultModelBuilder builder;
+    private final LruModelCache cache;
+    private final PomReader reader = new PomReader();
+    private final ImportMetrics metrics;
+
+    private final AtomicLong read = new AtomicLong();
+    private final AtomicLong built = new AtomicLong();
 
     public ModelResolver( RepositoryModelResolver resolver)
+    {
+        this( resolver, DEFAULT_CACHE_SIZE, new ImportMetrics() );
+    }
+
+    /**
+     * @param metrics where to record how long each POM takes to resolve
+     */
+    public ModelResolver( RepositoryModelResolver resolver, ImportMetrics metrics )
+    {
+        this( resolver, DEFAULT_CACHE_SIZE, metrics );
+    }
+
+    public ModelResolver( RepositoryModelResolver resolver, int cacheSize, ImportMetrics metrics )
     {
         this.resolver = resolver;
+        this.cache = new LruModelCache( cacheSize );
+        this.metrics = metrics;
+
+        builder = new DefaultModelBuilderFactory().newInstance();
+        builder.setModelValidator( new IgnoringModelValidator() );
     }
 
-    public Model resolve(File pomFile)
+    public LruModelCache getCache()
     {
-        ModelBuildingRequest req = new DefaultModelBuildingRequest();
-        req.setProcessPlugins( false );
-        req.setPomFile( pomFile );
-        req.setModelResolver( resolver );
-        req.setValidationLevel( ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL );
+        return cache;
+    }
 
-        DefaultModelBuilder builder = new DefaultModelBuilderFactory().newInstance();
-        builder.setModelValidator( new ModelValidator()
+    public PomRecord record( File pomFile ) throws IOException
+    {
+        long start = System.nanoTime();
+        try
         {
-            public void validateRawModel( Model model, ModelBuildingRequest request, ModelProblemCollector problems )
+            PomRecord record = reader.read( pomFile );
+            if ( record != null )
             {
+                read.incrementAndGet();
+                return record;
             }
 
-            public void validateEffectiveModel( Model model, ModelBuildingRequest request, ModelProblemCollector problems )
+            ModelBuildingRequest req = newRequest();
+            req.setPomFile( pomFile );
+            ModelBuildingResult result = build( req );
+            record = PomRecord.from( result.getEffectiveModel(), result.getRawModel() );
+            built.incrementAndGet();
+            return record;
+        }
+        finally
+        {
+            metrics.resolve.recordSince( start );
+        }
+    }
+
+    /**
+     * Like {@link #record(File)}, for POMs that need not be files, such as POMs in a {@link PomArchive}.
+     */
+    public PomRecord record( ModelSource pom ) throws IOException
+    {
+        if ( pom instanceof FileModelSource )
+            return record( ((FileModelSource) pom).getPomFile() );
+
+        long start = System.nanoTime();
+        try
+        {
+            PomRecord record = reader.read( pom.getInputStream() );
+            if ( record != null )
             {
-                try
-                {
-                    Field problemsList = problems.getClass().getDeclaredField("problems");
-                    problemsList.setAccessible( true );
-                    List<?> list = (List<?>) problemsList.get( problems );
-                    list.clear();
-
-                    Field severitiesSet = problems.getClass().getDeclaredField("severities");
-                    severitiesSet.setAccessible( true );
-                    Set<?> set = (Set<?>) severitiesSet.get( problems );
-                    set.clear();
-                }
-                catch ( Throwable e )
-                {
-                    e.printStackTrace();
-                }
+                read.incrementAndGet();
+                return record;
             }
-        } );
 
+            ModelBuildingRequest req = newRequest();
+            req.setModelSource( pom );
+            ModelBuildingResult result = build( req );
+            record = PomRecord.from( result.getEffectiveModel(), result.getRawModel() );
+            built.incrementAndGet();
+            return record;
+        }
+        finally
+        {
+            metrics.resolve.recordSince( start );
+        }
+    }
+
+    public Model resolve(File pomFile)
+    {
+        ModelBuildingRequest req = newRequest();
+        req.setPomFile( pomFile );
+        return build( req ).getEffectiveModel();
+    }
+
+    public Model resolve( ModelSource pom )
+    {
+        ModelBuildingRequest req = newRequest();
+        req.setModelSource( pom );
+        return build( req ).getEffectiveModel();
+    }
+
+    private ModelBuildingRequest newRequest()
+    {
+        ModelBuildingRequest req = new DefaultModelBuildingRequest();
+        req.setProcessPlugins( false );
+        req.setModelResolver( resolver );
+        req.setModelCache( cache );
+        req.setValidationLevel( ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL );
+        return req;
+    }
+
+    private ModelBuildingResult build( ModelBuildingRequest req )
+    {
         try
         {
-            Model model = builder.build( req ).getEffectiveModel();
-            return model;
+            return builder.build( req );
         }
         catch ( Throwable e )
         {
@@ -69,4 +158,43 @@ public class ModelResolver
         }
 
     }
+
+    /**
+     * How many records were read directly and how many needed the model builder.
+     */
+    @Override
+    public String toString()
+    {
+        long total = read.get() + built.get();
+        return String.format( "%d of %d POMs (%.1f%%) read without the model builder", read.get(), total,
+                total == 0 ? 0D : read.get() * 100D / total );
+    }
+
+    private static class IgnoringModelValidator
+        implements ModelValidator
+    {
+        public void validateRawModel( Model model, ModelBuildingRequest request, ModelProblemCollector problems )
+        {
+        }
+
+        public void validateEffectiveModel( Model model, ModelBuildingRequest request, ModelProblemCollector problems )
+        {
+            try
+            {
+                Field problemsList = problems.getClass().getDeclaredField("problems");
+                problemsList.setAccessible( true );
+                List<?> list = (List<?>) problemsList.get( problems );
+                list.clear();
+
+                Field severitiesSet = problems.getClass().getDeclaredField("severities");
+                severitiesSet.setAccessible( true );
+                Set<?> set = (Set<?>) severitiesSet.get( problems );
+                set.clear();
+            }
+            catch ( Throwable e )
+            {
+                e.printStackTrace();
+            }
+        }
+    }
 }
@@ -0,0 +1,176 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the artifacts listed in a Maven repository index, the "nexus-maven-repository-index.gz" file that
+ * repositories publish in their ".index" directory. The file is decoded one document at a time, so it never has to
+ * fit in memory.
+ * <p/>
+ * The format is a gzipped stream of: a version byte, a timestamp, and then documents until the end of the stream.
+ * A document is a field count followed by fields, each a flags byte, a name in {@link DataInputStream#readUTF()}
+ * format, and a value in the same modified UTF-8 but with an int length. Artifacts are documents with a "u" field of
+ * the form "groupId|artifactId|version|classifier|extension", where the classifier is "NA" if there is none. Documents
+ * with a "del" field record deletions, and are skipped.
+ */
+public class NexusIndexReader
+    implements Closeable
+{
+    private static final int SUPPORTED_VERSION = 1;
+
+    private final DataInputStream in;
+    private final long timestamp;
+    private long documents;
+
+    public NexusIndexReader( InputStream index ) throws IOException
+    {
+        in = new DataInputStream( new BufferedInputStream( new GZIPInputStream( index, 1 << 16 ), 1 << 16 ) );
+
+        int version = in.readByte();
+        if ( version != SUPPORTED_VERSION )
+            throw new IOException( "Unsupported index version " + version );
+        timestamp = in.readLong();
+    }
+
+    /**
+     * @return when the index was published, or -1 if it does not say
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public long getDocuments()
+    {
+        return documents;
+    }
+
+    /**
+     * Visit every artifact in a groupId, or in a groupId below it.
+     *
+     * @return number of artifacts visited
+     */
+    public long read( String groupIdPrefix, Visitor visitor ) throws IOException
+    {
+        long artifacts = 0;
+        String uinfo;
+        while ( (uinfo = nextArtifact()) != null )
+        {
+            String[] coordinates = uinfo.split( "\\|" );
+            if ( coordinates.length < 3 )
+                continue;
+
+            String groupId = coordinates[0];
+            if ( groupIdPrefix == null || groupId.equals( groupIdPrefix ) || groupId.startsWith( groupIdPrefix + "." ) )
+            {
+                visitor.visit( groupId, coordinates[1], coordinates[2] );
+                artifacts++;
+            }
+        }
+        return artifacts;
+    }
+
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    /**
+     * @return the "u" field of the next artifact document, or null at the end of the index
+     */
+    private String nextArtifact() throws IOException
+    {
+        while ( true )
+        {
+            int fields;
+            try
+            {
+                fields = in.readInt();
+            }
+            catch ( EOFException e )
+            {
+                return null;
+            }
+            documents++;
+
+            String uinfo = null;
+            boolean deleted = false;
+            for ( int i = 0; i < fields; i++ )
+            {
+                in.readByte(); // Flags
+                String name = in.readUTF();
+                if ( name.equals( "u" ) )
+                    uinfo = readString( in );
+                else
+                {
+                    if ( name.equals( "del" ) )
+                        deleted = true;
+                    skipString( in );
+                }
+            }
+
+            if ( uinfo != null && !deleted )
+                return uinfo;
+        }
+    }
+
+    private static void skipString( DataInputStream in ) throws IOException
+    {
+        int length = in.readInt();
+        while ( length > 0 )
+        {
+            int skipped = in.skipBytes( length );
+            if ( skipped <= 0 )
+                throw new EOFException();
+            length -= skipped;
+        }
+    }
+
+    /**
+     * Modified UTF-8, as in {@link DataInputStream#readUTF()}, but with an int length.
+     */
+    private static String readString( DataInputStream in ) throws IOException
+    {
+        int length = in.readInt();
+        byte[] bytes = new byte[length];
+        in.readFully( bytes );
+
+        char[] chars = new char[length];
+        int count = 0;
+        int i = 0;
+        while ( i < length )
+        {
+            int c = bytes[i] & 0xFF;
+            if ( c < 0x80 )
+            {
+                chars[count++] = (char) c;
+                i++;
+            }
+            else if ( (c & 0xE0) == 0xC0 && i + 1 < length )
+            {
+                chars[count++] = (char) (((c & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+                i += 2;
+            }
+            else if ( (c & 0xF0) == 0xE0 && i + 2 < length )
+            {
+                chars[count++] = (char) (((c & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+                i += 3;
+            }
+            else
+                throw new UTFDataFormatException( "Malformed string in index at byte " + i );
+        }
+        return new String( chars, 0, count );
+    }
+
+    public interface Visitor
+    {
+        void visit( String groupId, String artifactId, String version ) throws IOException;
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.rickardoberg.neomvn;
+
+/**
+ * Import-time dictionary of the group, artifact and version nodes created so far, keyed by groupId,
+ * groupId:artifactId and groupId:artifactId:version. All node lookups during an import are served from here, so
+ * the Lucene indexes are only written, never read.
+ */
+public class NodeIdDictionary
+{
+    public static final long NONE = StringLongMap.NONE;
+
+    private final StringLongMap groups = new StringLongMap( 1 << 12 );
+    private final StringLongMap artifacts = new StringLongMap( 1 << 14 );
+    private final StringLongMap versions = new StringLongMap( 1 << 16 );
+
+    public long group( String groupId )
+    {
+        return groups.get( groupId );
+    }
+
+    public void group( String groupId, long nodeId )
+    {
+        groups.putIfAbsent( groupId, nodeId );
+    }
+
+    public long artifact( String groupId, String artifactId )
+    {
+        return artifacts.get( groupId + ':' + artifactId );
+    }
+
+    public void artifact( String groupId, String artifactId, long nodeId )
+    {
+        artifacts.putIfAbsent( groupId + ':' + artifactId, nodeId );
+    }
+
+    public long version( String groupId, String artifactId, String version )
+    {
+        return versions.get( gav( groupId, artifactId, version ) );
+    }
+
+    /**
+     * Register a version node. If there already is a node for the same coordinates, that one is kept.
+     */
+    public void version( String groupId, String artifactId, String version, long nodeId )
+    {
+        versions.putIfAbsent( gav( groupId, artifactId, version ), nodeId );
+    }
+
+    public long memoryUsage()
+    {
+        return groups.memoryUsage() + artifacts.memoryUsage() + versions.memoryUsage();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "%d groups, %d artifacts, %d versions in %.1f MB", groups.size(), artifacts.size(),
+                versions.size(), memoryUsage() / (1024D * 1024D) );
+    }
+
+    /**
+     * @return the groupId:artifactId:version key of a version, as used in this dictionary and in the "gav" entries of
+     * the versions index
+     */
+    public static String gav( String groupId, String artifactId, String version )
+    {
+        return new StringBuilder( groupId.length() + artifactId.length() + version.length() + 2 )
+                .append( groupId ).append( ':' ).append( artifactId ).append( ':' ).append( version ).toString();
+    }
+}
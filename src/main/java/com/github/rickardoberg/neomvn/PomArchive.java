@@ -0,0 +1,114 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.maven.model.building.ModelSource;
+
+/**
+ * The POMs in a repository snapshot archive, read without extracting it. The archive is indexed when it is opened,
+ * so POMs can be read in any order, which is what parent lookups need.
+ * <p/>
+ * The repository is taken to start at the archive root, or at the first directory named "repository" if all POMs
+ * are below it, as in an archive of ".m2/repository".
+ */
+public abstract class PomArchive
+    implements PomSource, Closeable
+{
+    private static final String REPOSITORY = "repository/";
+
+    private final File file;
+
+    protected PomArchive( File file )
+    {
+        this.file = file;
+    }
+
+    public static boolean isArchive( File file )
+    {
+        String name = file.getName().toLowerCase();
+        return file.isFile() && (name.endsWith( ".zip" ) || name.endsWith( ".tar.gz" ) || name.endsWith( ".tgz" ));
+    }
+
+    public static PomArchive open( File file ) throws IOException
+    {
+        if ( file.getName().toLowerCase().endsWith( ".zip" ) )
+            return new ZipPomArchive( file );
+        else
+            return new TarPomArchive( file );
+    }
+
+    /**
+     * @return paths of all POMs relative to the repository, in archive order
+     */
+    public abstract List<String> getPoms();
+
+    /**
+     * @param path relative to the repository, as in {@link RepositoryModelResolver#getPath(String, String, String)}
+     */
+    public abstract boolean contains( String path );
+
+    protected abstract InputStream open( String path ) throws IOException;
+
+    public ModelSource source( final String path )
+    {
+        return new ModelSource()
+        {
+            public InputStream getInputStream() throws IOException
+            {
+                return open( path );
+            }
+
+            public String getLocation()
+            {
+                return file.getPath() + "!/" + path;
+            }
+
+            @Override
+            public String toString()
+            {
+                return getLocation();
+            }
+        };
+    }
+
+    public void visit( Visitor visitor ) throws IOException, InterruptedException
+    {
+        for ( String pom : getPoms() )
+        {
+            visitor.visit( source( pom ) );
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return getPoms().size() + " POMs in " + file;
+    }
+
+    /**
+     * @param names paths of all POM entries in the archive
+     * @return the path of the repository in the archive, empty or ending with a slash
+     */
+    protected static String repositoryRoot( List<String> names )
+    {
+        if ( names.isEmpty() )
+            return "";
+
+        String first = names.get( 0 );
+        int index = first.startsWith( REPOSITORY ) ? 0 : first.indexOf( "/" + REPOSITORY );
+        if ( index < 0 )
+            return "";
+        String root = index == 0 ? REPOSITORY : first.substring( 0, index + 1 + REPOSITORY.length() );
+
+        for ( String name : names )
+        {
+            if ( !name.startsWith( root ) )
+                return "";
+        }
+        return root;
+    }
+}
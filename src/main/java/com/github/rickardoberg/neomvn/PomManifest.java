@@ -0,0 +1,425 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Record of every POM in an imported database: its path relative to the repository, size, modification time and
+ * SHA-1, the coordinates, parent and imported BOMs it resolved to, and the artifacts it has version range dependencies
+ * on. An incremental import compares the repository against this to find the POMs that were added, changed or removed
+ * since the last run.
+ */
+public class PomManifest
+{
+    public static final String FILE_NAME = "pom-manifest.txt";
+
+    // Sorted by path, so everything at or below a directory is one range
+    private final NavigableMap<String, Entry> entries = new TreeMap<String, Entry>();
+
+    public static PomManifest load( File file ) throws IOException
+    {
+        PomManifest manifest = new PomManifest();
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+        try
+        {
+            String line;
+            while ( (line = reader.readLine()) != null )
+            {
+                String[] fields = line.split( "\t", -1 );
+                // Manifests written before imports and ranges were recorded have six fields
+                Entry entry = new Entry( fields[0], Long.parseLong( fields[1] ), Long.parseLong( fields[2] ), fields[3],
+                        fields[4], fields[5].isEmpty() ? null : fields[5],
+                        fields.length > 6 ? split( fields[6] ) : Collections.<String>emptyList(),
+                        fields.length > 7 ? split( fields[7] ) : Collections.<String>emptyList() );
+                manifest.entries.put( entry.path, entry );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return manifest;
+    }
+
+    public void save( File file ) throws IOException
+    {
+        File temp = new File( file.getPath() + ".tmp" );
+        BufferedWriter writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( temp ), "UTF-8" ) );
+        try
+        {
+            for ( Entry entry : entries.values() )
+            {
+                writer.write( entry.path + '\t' + entry.size + '\t' + entry.lastModified + '\t' + entry.sha1 + '\t'
+                        + entry.gav + '\t' + (entry.parent == null ? "" : entry.parent) + '\t' + join( entry.imports )
+                        + '\t' + join( entry.ranges ) );
+                writer.newLine();
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        if ( !temp.renameTo( file ) )
+        {
+            file.delete();
+            if ( !temp.renameTo( file ) )
+                throw new IOException( "Could not replace " + file );
+        }
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Record a POM that was imported.
+     *
+     * @return the entry recorded for the same file before, or null if there was none
+     */
+    public Entry add( File repository, File pomFile, PomRecord pom ) throws IOException
+    {
+        String path = relativePath( repository, pomFile );
+        Set<String> ranges = new LinkedHashSet<String>();
+        for ( PomRecord.DependencyRecord dependency : pom.dependencies )
+        {
+            if ( dependency.version != null && VersionRange.isRange( dependency.version ) )
+                ranges.add( dependency.groupId + ':' + dependency.artifactId );
+        }
+        return entries.put( path, new Entry( path, pomFile.length(), pomFile.lastModified(), sha1( pomFile ),
+                pom.toString(), pom.parent, pom.imports, new ArrayList<String>( ranges ) ) );
+    }
+
+    /**
+     * Compare the repository against this manifest. Entries for POMs that no longer exist are removed from the
+     * manifest and returned in {@link Changes#removed}. POMs that are new or whose content changed are returned in
+     * {@link Changes#changed}, along with every POM that inherits from or imports one of them, directly or through
+     * other POMs, and every POM with a version range dependency on an artifact that got or lost a version.
+     */
+    public Changes changes( File repository ) throws IOException
+    {
+        return changes( repository, Collections.singleton( repository ) );
+    }
+
+    /**
+     * Like {@link #changes(File)}, but only looks at the given files and directories. A directory is compared
+     * including everything below it, and a path that no longer exists removes every entry at or below it.
+     */
+    public Changes changes( File repository, Collection<File> paths ) throws IOException
+    {
+        Set<String> changed = new LinkedHashSet<String>();
+        List<Entry> removed = new ArrayList<Entry>();
+        for ( File path : paths )
+        {
+            String relativePath = relativePath( repository, path );
+            Set<String> seen = new HashSet<String>();
+            if ( path.isDirectory() )
+                scan( repository, path, seen, changed );
+            else if ( path.isFile() )
+                check( repository, path, seen, changed );
+
+            // Whatever was recorded at or below this path but is not there any more has been removed
+            List<Entry> recorded = new ArrayList<Entry>();
+            if ( entries.containsKey( relativePath ) )
+                recorded.add( entries.get( relativePath ) );
+            String prefix = relativePath.isEmpty() ? "" : relativePath + "/";
+            recorded.addAll( entries.subMap( prefix, prefix + '\uffff' ).values() );
+            for ( Entry entry : recorded )
+            {
+                if ( !seen.contains( entry.path ) )
+                {
+                    entries.remove( entry.path );
+                    removed.add( entry );
+                }
+            }
+        }
+
+        // POMs inheriting from or importing a changed or removed POM resolve differently now, and so do ranges on
+        // an artifact that got or lost a version
+        Map<String, List<String>> children = new HashMap<String, List<String>>();
+        Map<String, List<String>> rangeDependents = new HashMap<String, List<String>>();
+        for ( Entry entry : entries.values() )
+        {
+            if ( entry.parent != null )
+                dependent( children, entry.parent, entry.path );
+            for ( String bom : entry.imports )
+            {
+                dependent( children, bom, entry.path );
+            }
+            for ( String artifact : entry.ranges )
+            {
+                dependent( rangeDependents, artifact, entry.path );
+            }
+        }
+
+        Deque<String> parents = new ArrayDeque<String>();
+        Set<String> artifacts = new HashSet<String>();
+        for ( String path : changed )
+        {
+            Entry entry = entries.get( path );
+            if ( entry != null )
+            {
+                parents.add( entry.gav );
+                artifacts.add( artifact( entry.gav ) );
+            }
+            else
+            {
+                // Not imported yet, so only its place in the repository tells what it is
+                String artifact = artifactOf( path );
+                if ( artifact != null )
+                    artifacts.add( artifact );
+            }
+        }
+        for ( Entry entry : removed )
+        {
+            parents.add( entry.gav );
+            artifacts.add( artifact( entry.gav ) );
+        }
+
+        for ( String artifact : artifacts )
+        {
+            List<String> dependents = rangeDependents.get( artifact );
+            if ( dependents == null )
+                continue;
+            for ( String dependent : dependents )
+            {
+                if ( changed.add( dependent ) )
+                    parents.add( entries.get( dependent ).gav );
+            }
+        }
+
+        Set<String> visitedParents = new HashSet<String>();
+        while ( !parents.isEmpty() )
+        {
+            String parent = parents.remove();
+            if ( !visitedParents.add( parent ) || !children.containsKey( parent ) )
+                continue;
+
+            for ( String child : children.get( parent ) )
+            {
+                if ( changed.add( child ) )
+                    parents.add( entries.get( child ).gav );
+            }
+        }
+
+        List<File> changedFiles = new ArrayList<File>( changed.size() );
+        for ( String path : changed )
+        {
+            changedFiles.add( new File( repository, path ) );
+        }
+        return new Changes( changedFiles, removed );
+    }
+
+    private static void dependent( Map<String, List<String>> dependents, String key, String path )
+    {
+        List<String> paths = dependents.get( key );
+        if ( paths == null )
+        {
+            paths = new ArrayList<String>();
+            dependents.put( key, paths );
+        }
+        paths.add( path );
+    }
+
+    private static String artifact( String gav )
+    {
+        return gav.substring( 0, gav.lastIndexOf( ':' ) );
+    }
+
+    /**
+     * @return groupId:artifactId of a POM at a path in the Maven repository layout,
+     * group/path/artifactId/version/artifactId-version.pom, or null if the path is not laid out like that
+     */
+    static String artifactOf( String path )
+    {
+        String[] parts = path.split( "/" );
+        if ( parts.length < 4 || !parts[parts.length - 1].startsWith( parts[parts.length - 3] + "-" ) )
+            return null;
+
+        StringBuilder groupId = new StringBuilder( parts[0] );
+        for ( int i = 1; i < parts.length - 3; i++ )
+        {
+            groupId.append( '.' ).append( parts[i] );
+        }
+        return groupId.append( ':' ).append( parts[parts.length - 3] ).toString();
+    }
+
+    private static List<String> split( String field )
+    {
+        return field.isEmpty() ? Collections.<String>emptyList() : Arrays.asList( field.split( "," ) );
+    }
+
+    private static String join( List<String> values )
+    {
+        StringBuilder joined = new StringBuilder();
+        for ( String value : values )
+        {
+            if ( joined.length() > 0 )
+                joined.append( ',' );
+            joined.append( value );
+        }
+        return joined.toString();
+    }
+
+    private void scan( final File repository, File directory, final Set<String> seen, final Set<String> changed ) throws IOException
+    {
+        try
+        {
+            new RepositoryWalker( 1 ).walk( directory.toPath(), new RepositoryWalker.Visitor()
+            {
+                public void visit( Path pom ) throws IOException
+                {
+                    check( repository, pom.toFile(), seen, changed );
+                }
+            } );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while comparing " + directory );
+        }
+    }
+
+    private void check( File repository, File pom, Set<String> seen, Set<String> changed ) throws IOException
+    {
+        if ( !pom.getName().endsWith( ".pom" ) )
+            return;
+
+        String path = relativePath( repository, pom );
+        seen.add( path );
+
+        Entry entry = entries.get( path );
+        if ( entry == null )
+        {
+            changed.add( path );
+        }
+        else if ( entry.size != pom.length() || entry.lastModified != pom.lastModified() )
+        {
+            // Touched. Only a different hash means different content
+            if ( entry.sha1.equals( sha1( pom ) ) )
+                entries.put( path, new Entry( path, pom.length(), pom.lastModified(), entry.sha1, entry.gav, entry.parent,
+                        entry.imports, entry.ranges ) );
+            else
+                changed.add( path );
+        }
+    }
+
+    private static String relativePath( File repository, File pomFile )
+    {
+        if ( pomFile.getAbsolutePath().equals( repository.getAbsolutePath() ) )
+            return "";
+        return pomFile.getAbsolutePath().substring( repository.getAbsolutePath().length() + 1 ).replace( File.separatorChar, '/' );
+    }
+
+    static String sha1( File file ) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( "SHA-1" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ( (len = in.read( buffer )) != -1 )
+            {
+                digest.update( buffer, 0, len );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return hex( digest.digest() );
+    }
+
+    static String hex( byte[] bytes )
+    {
+        StringBuilder hex = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes )
+        {
+            hex.append( Character.forDigit( (b >> 4) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return hex.toString();
+    }
+
+    public static class Entry
+    {
+        public final String path;
+        public final long size;
+        public final long lastModified;
+        public final String sha1;
+        /**
+         * groupId:artifactId:version the POM resolved to
+         */
+        public final String gav;
+        public final String parent;
+        /**
+         * groupId:artifactId:version of the BOMs the POM imports
+         */
+        public final List<String> imports;
+        /**
+         * groupId:artifactId of the artifacts the POM has version range dependencies on
+         */
+        public final List<String> ranges;
+
+        Entry( String path, long size, long lastModified, String sha1, String gav, String parent, List<String> imports,
+               List<String> ranges )
+        {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha1 = sha1;
+            this.gav = gav;
+            this.parent = parent;
+            this.imports = imports;
+            this.ranges = ranges;
+        }
+    }
+
+    public static class Changes
+    {
+        public final Collection<File> changed;
+        public final Collection<Entry> removed;
+
+        Changes( Collection<File> changed, Collection<Entry> removed )
+        {
+            this.changed = changed;
+            this.removed = removed;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads a {@link PomRecord} straight from a POM file with StAX, for POMs that are complete on their own. A POM needs
+ * the model builder if it has a parent, property placeholders in anything the record uses, dependency management,
+ * profiles, or dependencies without a version; for those, {@link #read(File)} returns null.
+ * <p/>
+ * The result is the same as {@link PomRecord#from(org.apache.maven.model.Model)} on the effective model: values are
+ * trimmed, dependency scope defaults to "compile", and duplicate dependencies are merged the way the model builder
+ * does, keeping the position of the first and the values of the last.
+ */
+public class PomReader
+{
+    private static final ThreadLocal<XMLInputFactory> FACTORY = new ThreadLocal<XMLInputFactory>()
+    {
+        @Override
+        protected XMLInputFactory initialValue()
+        {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty( XMLInputFactory.SUPPORT_DTD, false );
+            factory.setProperty( XMLInputFactory.IS_COALESCING, true );
+            return factory;
+        }
+    };
+
+    /**
+     * @return the record, or null if the POM needs the model builder
+     */
+    public PomRecord read( File pomFile ) throws IOException
+    {
+        return read( new FileInputStream( pomFile ) );
+    }
+
+    /**
+     * Read a POM from a stream, which is closed afterwards.
+     *
+     * @return the record, or null if the POM needs the model builder
+     */
+    public PomRecord read( InputStream pom ) throws IOException
+    {
+        InputStream in = new BufferedInputStream( pom, 1 << 13 );
+        try
+        {
+            XMLStreamReader reader = FACTORY.get().createXMLStreamReader( in );
+            try
+            {
+                return read( reader );
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch ( XMLStreamException e )
+        {
+            // Let the model builder decide what to make of it
+            return null;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private PomRecord read( XMLStreamReader reader ) throws XMLStreamException
+    {
+        String groupId = null;
+        String artifactId = null;
+        String version = null;
+        String name = null;
+        Map<String, PomRecord.DependencyRecord> dependencies = null;
+
+        reader.nextTag();
+        if ( !reader.getLocalName().equals( "project" ) )
+            return null;
+
+        while ( reader.nextTag() == XMLStreamConstants.START_ELEMENT )
+        {
+            String element = reader.getLocalName();
+            if ( element.equals( "groupId" ) )
+                groupId = text( reader );
+            else if ( element.equals( "artifactId" ) )
+                artifactId = text( reader );
+            else if ( element.equals( "version" ) )
+                version = text( reader );
+            else if ( element.equals( "name" ) )
+                name = text( reader );
+            else if ( element.equals( "dependencies" ) )
+            {
+                dependencies = dependencies( reader );
+                if ( dependencies == null )
+                    return null;
+            }
+            else if ( element.equals( "parent" ) || element.equals( "dependencyManagement" )
+                    || element.equals( "profiles" ) )
+                return null;
+            else
+                skip( reader );
+        }
+
+        if ( !isLiteral( groupId ) || !isLiteral( artifactId ) || !isLiteral( version ) )
+            return null;
+        if ( name == null )
+            name = artifactId;
+        else if ( name.contains( "${" ) )
+            return null;
+
+        List<PomRecord.DependencyRecord> list = dependencies == null || dependencies.isEmpty()
+                ? Collections.<PomRecord.DependencyRecord>emptyList()
+                : new ArrayList<PomRecord.DependencyRecord>( dependencies.values() );
+        return new PomRecord( groupId, artifactId, version, name, null, list );
+    }
+
+    /**
+     * @return dependencies by management key, or null if any of them needs the model builder
+     */
+    private Map<String, PomRecord.DependencyRecord> dependencies( XMLStreamReader reader ) throws XMLStreamException
+    {
+        Map<String, PomRecord.DependencyRecord> dependencies = new LinkedHashMap<String, PomRecord.DependencyRecord>();
+        while ( reader.nextTag() == XMLStreamConstants.START_ELEMENT )
+        {
+            if ( !reader.getLocalName().equals( "dependency" ) )
+            {
+                skip( reader );
+                continue;
+            }
+
+            String groupId = null;
+            String artifactId = null;
+            String version = null;
+            String type = "jar";
+            String classifier = null;
+            String scope = null;
+            String optional = null;
+            while ( reader.nextTag() == XMLStreamConstants.START_ELEMENT )
+            {
+                String element = reader.getLocalName();
+                if ( element.equals( "groupId" ) )
+                    groupId = text( reader );
+                else if ( element.equals( "artifactId" ) )
+                    artifactId = text( reader );
+                else if ( element.equals( "version" ) )
+                    version = text( reader );
+                else if ( element.equals( "type" ) )
+                    type = text( reader );
+                else if ( element.equals( "classifier" ) )
+                    classifier = text( reader );
+                else if ( element.equals( "scope" ) )
+                    scope = text( reader );
+                else if ( element.equals( "optional" ) )
+                    optional = text( reader );
+                else
+                    skip( reader );
+            }
+
+            if ( !isLiteral( groupId ) || !isLiteral( artifactId ) || !isLiteral( version )
+                    || !isLiteral( type ) || ( classifier != null && classifier.contains( "${" ) )
+                    || ( scope != null && scope.contains( "${" ) )
+                    || ( optional != null && optional.contains( "${" ) ) )
+                return null;
+
+            if ( scope == null || scope.length() == 0 )
+                scope = "compile";
+
+            // Same key as Dependency.getManagementKey(), which the model builder uses to merge duplicates
+            String key = groupId + ":" + artifactId + ":" + type + ( classifier != null ? ":" + classifier : "" );
+            dependencies.put( key, new PomRecord.DependencyRecord( groupId, artifactId, version, scope,
+                    Boolean.parseBoolean( optional ) ) );
+        }
+        return dependencies;
+    }
+
+    private static boolean isLiteral( String value )
+    {
+        return value != null && value.length() > 0 && !value.contains( "${" );
+    }
+
+    private static String text( XMLStreamReader reader ) throws XMLStreamException
+    {
+        return reader.getElementText().trim();
+    }
+
+    private static void skip( XMLStreamReader reader ) throws XMLStreamException
+    {
+        int depth = 1;
+        while ( depth > 0 )
+        {
+            int event = reader.next();
+            if ( event == XMLStreamConstants.START_ELEMENT )
+                depth++;
+            else if ( event == XMLStreamConstants.END_ELEMENT )
+                depth--;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+
+/**
+ * Compact summary of a resolved POM: its coordinates, name, parent, imported BOMs and declared dependencies. This is all the import
+ * needs from an effective model, so a POM only has to be resolved once and the dependency pass can run from these
+ * records.
+ */
+public class PomRecord
+{
+    public final String groupId;
+    public final String artifactId;
+    public final String version;
+    public final String name;
+    /**
+     * groupId:artifactId:version of the parent POM, or null
+     */
+    public final String parent;
+    /**
+     * groupId:artifactId:version of the POMs imported into dependencyManagement with scope "import"
+     */
+    public final List<String> imports;
+    public final List<DependencyRecord> dependencies;
+
+    public PomRecord( String groupId, String artifactId, String version, String name, String parent,
+                      List<DependencyRecord> dependencies )
+    {
+        this( groupId, artifactId, version, name, parent, Collections.<String>emptyList(), dependencies );
+    }
+
+    public PomRecord( String groupId, String artifactId, String version, String name, String parent,
+                      List<String> imports, List<DependencyRecord> dependencies )
+    {
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.version = version;
+        this.name = name;
+        this.parent = parent;
+        this.imports = imports;
+        this.dependencies = dependencies;
+    }
+
+    public static PomRecord from( Model model )
+    {
+        return from( model, null );
+    }
+
+    /**
+     * @param rawModel the POM as written, to find the BOMs it imports, which are gone from the effective model. May
+     * be null
+     */
+    public static PomRecord from( Model model, Model rawModel )
+    {
+        String groupId = model.getGroupId() == null ? model.getParent().getGroupId() : model.getGroupId();
+        String version = model.getVersion() == null ? model.getParent().getVersion() : model.getVersion();
+        String artifactId = model.getArtifactId();
+        String name = model.getName();
+        if ( name == null )
+            name = artifactId;
+        String parent = model.getParent() == null ? null : NodeIdDictionary.gav( model.getParent().getGroupId(),
+                model.getParent().getArtifactId(), model.getParent().getVersion() );
+
+        List<DependencyRecord> dependencies;
+        if ( model.getDependencies().isEmpty() )
+        {
+            dependencies = Collections.emptyList();
+        }
+        else
+        {
+            dependencies = new ArrayList<DependencyRecord>( model.getDependencies().size() );
+            for ( Dependency dependency : model.getDependencies() )
+            {
+                dependencies.add( new DependencyRecord( dependency.getGroupId(), dependency.getArtifactId(),
+                        dependency.getVersion(), dependency.getScope(), dependency.isOptional() ) );
+            }
+        }
+
+        return new PomRecord( groupId, artifactId, version, name, parent, imports( model, rawModel ), dependencies );
+    }
+
+    private static List<String> imports( Model model, Model rawModel )
+    {
+        if ( rawModel == null || rawModel.getDependencyManagement() == null )
+            return Collections.emptyList();
+
+        List<String> imports = new ArrayList<String>();
+        for ( Dependency dependency : rawModel.getDependencyManagement().getDependencies() )
+        {
+            if ( "import".equals( dependency.getScope() ) && "pom".equals( dependency.getType() ) )
+                imports.add( NodeIdDictionary.gav( interpolate( dependency.getGroupId(), model ),
+                        interpolate( dependency.getArtifactId(), model ), interpolate( dependency.getVersion(), model ) ) );
+        }
+        return imports;
+    }
+
+    /**
+     * Replace the ${...} expressions that import coordinates use: project coordinates and properties.
+     */
+    private static String interpolate( String value, Model model )
+    {
+        if ( value == null || !value.contains( "${" ) )
+            return value;
+
+        StringBuilder result = new StringBuilder();
+        int at = 0;
+        int start;
+        while ( (start = value.indexOf( "${", at )) >= 0 )
+        {
+            int end = value.indexOf( '}', start );
+            if ( end < 0 )
+                break;
+            result.append( value, at, start );
+            String expression = value.substring( start + 2, end );
+            String replacement;
+            if ( expression.equals( "project.version" ) || expression.equals( "pom.version" ) || expression.equals( "version" ) )
+                replacement = model.getVersion() == null ? model.getParent().getVersion() : model.getVersion();
+            else if ( expression.equals( "project.groupId" ) || expression.equals( "pom.groupId" ) || expression.equals( "groupId" ) )
+                replacement = model.getGroupId() == null ? model.getParent().getGroupId() : model.getGroupId();
+            else
+                replacement = model.getProperties().getProperty( expression );
+            result.append( replacement == null ? value.substring( start, end + 1 ) : replacement );
+            at = end + 1;
+        }
+        return result.append( value.substring( at ) ).toString();
+    }
+
+    /**
+     * Rough number of heap bytes held by this record, used to decide when buffered records should go to disk.
+     */
+    public long estimatedSize()
+    {
+        long size = 64 + chars( groupId ) + chars( artifactId ) + chars( version ) + chars( name ) + chars( parent );
+        for ( String bom : imports )
+        {
+            size += chars( bom );
+        }
+        for ( DependencyRecord dependency : dependencies )
+        {
+            size += 48 + chars( dependency.groupId ) + chars( dependency.artifactId ) + chars( dependency.version );
+        }
+        return size;
+    }
+
+    public void write( DataOutput out ) throws IOException
+    {
+        out.writeUTF( groupId );
+        out.writeUTF( artifactId );
+        out.writeUTF( version );
+        out.writeUTF( name );
+        writeNullable( out, parent );
+        out.writeInt( imports.size() );
+        for ( String bom : imports )
+        {
+            out.writeUTF( bom );
+        }
+        out.writeInt( dependencies.size() );
+        for ( DependencyRecord dependency : dependencies )
+        {
+            writeNullable( out, dependency.groupId );
+            writeNullable( out, dependency.artifactId );
+            writeNullable( out, dependency.version );
+            writeNullable( out, dependency.scope );
+            out.writeBoolean( dependency.optional );
+        }
+    }
+
+    public static PomRecord read( DataInput in ) throws IOException
+    {
+        String groupId = in.readUTF();
+        String artifactId = in.readUTF();
+        String version = in.readUTF();
+        String name = in.readUTF();
+        String parent = readNullable( in );
+        int count = in.readInt();
+        List<String> imports = count == 0 ? Collections.<String>emptyList() : new ArrayList<String>( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            imports.add( in.readUTF() );
+        }
+        count = in.readInt();
+        List<DependencyRecord> dependencies = count == 0
+                ? Collections.<DependencyRecord>emptyList()
+                : new ArrayList<DependencyRecord>( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            dependencies.add( new DependencyRecord( readNullable( in ), readNullable( in ), readNullable( in ),
+                    readNullable( in ), in.readBoolean() ) );
+        }
+        return new PomRecord( groupId, artifactId, version, name, parent, imports, dependencies );
+    }
+
+    @Override
+    public String toString()
+    {
+        return groupId + ":" + artifactId + ":" + version;
+    }
+
+    private static int chars( String value )
+    {
+        return value == null ? 0 : 40 + value.length() * 2;
+    }
+
+    private static void writeNullable( DataOutput out, String value ) throws IOException
+    {
+        out.writeBoolean( value != null );
+        if ( value != null )
+            out.writeUTF( value );
+    }
+
+    private static String readNullable( DataInput in ) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public static class DependencyRecord
+    {
+        public final String groupId;
+        public final String artifactId;
+        public final String version;
+        public final String scope;
+        public final boolean optional;
+
+        public DependencyRecord( String groupId, String artifactId, String version, String scope, boolean optional )
+        {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.scope = scope;
+            this.optional = optional;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buffer of {@link PomRecord}s collected during the version pass. Records are kept on the heap until their estimated
+ * size reaches the configured limit, after which they are spilled to a temporary file. Records are visited in the
+ * order they were added.
+ */
+public class PomRecordBuffer
+{
+    private final long maxHeapBytes;
+
+    private List<PomRecord> records = new ArrayList<PomRecord>();
+    private long heapBytes = 0;
+    private int size = 0;
+
+    private File spillFile;
+    private DataOutputStream spill;
+
+    public PomRecordBuffer( long maxHeapBytes )
+    {
+        this.maxHeapBytes = maxHeapBytes;
+    }
+
+    public void add( PomRecord record ) throws IOException
+    {
+        records.add( record );
+        heapBytes += record.estimatedSize();
+        size++;
+
+        if ( heapBytes > maxHeapBytes )
+            spill();
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isSpilled()
+    {
+        return spillFile != null;
+    }
+
+    public void visit( Main.Visitor<PomRecord> visitor ) throws IOException
+    {
+        if ( spill != null )
+        {
+            spill.flush();
+
+            DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( spillFile ), 1 << 16 ) );
+            try
+            {
+                int spilled = size - records.size();
+                for ( int i = 0; i < spilled; i++ )
+                {
+                    visitor.accept( PomRecord.read( in ) );
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+
+        for ( PomRecord record : records )
+        {
+            visitor.accept( record );
+        }
+    }
+
+    public void close() throws IOException
+    {
+        records.clear();
+        if ( spill != null )
+        {
+            spill.close();
+            spill = null;
+            spillFile.delete();
+        }
+    }
+
+    private void spill() throws IOException
+    {
+        if ( spill == null )
+        {
+            spillFile = File.createTempFile( "neomvn-poms", ".bin" );
+            spillFile.deleteOnExit();
+            spill = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( spillFile ), 1 << 16 ) );
+        }
+
+        for ( PomRecord record : records )
+        {
+            record.write( spill );
+        }
+        records = new ArrayList<PomRecord>();
+        heapBytes = 0;
+    }
+}
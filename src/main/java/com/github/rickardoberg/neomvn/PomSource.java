@@ -0,0 +1,19 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.IOException;
+
+import org.apache.maven.model.building.ModelSource;
+
+/**
+ * Where the version pass finds its POMs: a repository directory ({@link DirectoryPomSource}) or a repository
+ * snapshot archive ({@link PomArchive}).
+ */
+public interface PomSource
+{
+    void visit( Visitor visitor ) throws IOException, InterruptedException;
+
+    interface Visitor
+    {
+        void visit( ModelSource pom ) throws IOException, InterruptedException;
+    }
+}
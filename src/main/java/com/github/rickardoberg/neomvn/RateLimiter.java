@@ -0,0 +1,50 @@
+package com.github.rickardoberg.neomvn;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket. Each {@link #acquire()} takes one token, waiting until the bucket has refilled enough if it is empty.
+ * Tokens are reserved before waiting, so concurrent callers are spread out at the configured rate instead of all
+ * waking up at once.
+ */
+public class RateLimiter
+{
+    private final double permitsPerNano;
+    private final double burst;
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param permitsPerSecond sustained rate
+     * @param burst how many permits can be taken at once after a quiet period
+     */
+    public RateLimiter( double permitsPerSecond, int burst )
+    {
+        // With no rate, an empty bucket would never refill
+        if ( !(permitsPerSecond > 0) )
+            throw new IllegalArgumentException( "Rate must be more than 0 permits per second: " + permitsPerSecond );
+
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos( 1 );
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public void acquire() throws InterruptedException
+    {
+        long wait;
+        synchronized ( this )
+        {
+            long now = System.nanoTime();
+            tokens = Math.min( burst, tokens + (now - lastRefill) * permitsPerNano );
+            lastRefill = now;
+
+            tokens -= 1;
+            wait = tokens < 0 ? (long) (-tokens / permitsPerNano) : 0;
+        }
+
+        if ( wait > 0 )
+            TimeUnit.NANOSECONDS.sleep( wait );
+    }
+}
@@ -1,13 +1,11 @@
 package com.github.rickardoberg.neomvn;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.maven.model.Repository;
 import org.apache.maven.model.building.FileModelSource;
@@ -20,13 +18,48 @@ class RepositoryModelResolver implements ModelResolver
 {
     private File repository;
     private String mavenRepository;
+    private final DownloadEngine engine;
+    private final CrawlJournal journal;
+    private final PomArchive archive;
 
-    private List<Repository> repositories = new ArrayList<Repository>(  );
+    private List<Repository> repositories = new CopyOnWriteArrayList<Repository>(  );
 
-    RepositoryModelResolver( File repository, String mavenRepository )
+    /**
+     * @param engine shared with everything else downloading in this process, so that its rate limit holds
+     */
+    RepositoryModelResolver( File repository, String mavenRepository, DownloadEngine engine )
+    {
+        this( repository, mavenRepository, engine, null );
+    }
+
+    /**
+     * @param journal negative cache of POMs that no repository has, or null
+     */
+    RepositoryModelResolver( File repository, String mavenRepository, DownloadEngine engine, CrawlJournal journal )
+    {
+        this( repository, mavenRepository, engine, journal, null );
+    }
+
+    /**
+     * Resolve parent and import POMs from an archive only. Nothing is downloaded, a POM the archive does not have is
+     * unresolvable.
+     */
+    RepositoryModelResolver( PomArchive archive )
+    {
+        this( null, null, null, null, archive );
+    }
+
+    private RepositoryModelResolver( File repository, String mavenRepository, DownloadEngine engine,
+                                     CrawlJournal journal, PomArchive archive )
     {
         this.repository = repository;
         this.mavenRepository = mavenRepository;
+        this.engine = engine;
+        this.journal = journal;
+        this.archive = archive;
+
+        if ( mavenRepository == null )
+            return;
 
         Repository mainRepo = new Repository();
         mainRepo.setUrl( mavenRepository );
@@ -36,6 +69,14 @@ class RepositoryModelResolver implements ModelResolver
 
     public ModelSource resolveModel( String groupId, String artifactId, String versionId ) throws UnresolvableModelException
     {
+        if ( archive != null )
+        {
+            String path = getPath( groupId, artifactId, versionId );
+            if ( !archive.contains( path ) )
+                throw new UnresolvableModelException( "Not in archive: " + path, groupId, artifactId, versionId );
+            return archive.source( path );
+        }
+
         File pom = getLocalFile( groupId, artifactId, versionId );
 
         if (!pom.exists())
@@ -71,7 +112,16 @@ class RepositoryModelResolver implements ModelResolver
         return pom;
     }
 
-    public void addRepository( Repository repository ) throws InvalidRepositoryException
+    /**
+     * @return path of a POM relative to the repository root, with forward slashes
+     */
+    public static String getPath( String groupId, String artifactId, String versionId )
+    {
+        return groupId.replace( '.', '/' ) + "/" + artifactId + "/" + versionId + "/" + artifactId + "-" + versionId
+            + ".pom";
+    }
+
+    public synchronized void addRepository( Repository repository ) throws InvalidRepositoryException
     {
         for ( Repository existingRepository : repositories )
         {
@@ -84,11 +134,22 @@ class RepositoryModelResolver implements ModelResolver
 
     public ModelResolver newCopy()
     {
-        return new RepositoryModelResolver( repository, mavenRepository );
+        return new RepositoryModelResolver( repository, mavenRepository, engine, journal, archive );
     }
 
-    public void download( File localRepoFile ) throws IOException
+    /**
+     * Download a POM from the first repository that has it. A POM that is here already is only downloaded again if
+     * it changed.
+     *
+     * @return {@link DownloadEngine.Result#DOWNLOADED} or {@link DownloadEngine.Result#NOT_MODIFIED}
+     * @throws FileNotFoundException if no repository has the POM
+     */
+    public DownloadEngine.Result download( File localRepoFile ) throws IOException
     {
+        if ( journal != null && journal.isMissing( localRepoFile ) )
+            throw new FileNotFoundException( "Not in any repository (cached): " + localRepoFile );
+
+        boolean failed = false;
         for ( Repository repository1 : repositories )
         {
             String repository1Url = repository1.getUrl();
@@ -100,27 +161,23 @@ class RepositoryModelResolver implements ModelResolver
 
             try
             {
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setInstanceFollowRedirects( true );
-                InputStream in = conn.getInputStream();
-                localRepoFile.getParentFile().mkdirs();
-                FileOutputStream out = new FileOutputStream( localRepoFile );
-                byte[] buffer = new byte[4096];
-                int len;
-                while ((len = in.read( buffer )) != -1)
-                {
-                    out.write( buffer, 0, len );
-                }
-                in.close();
-                out.close();
-                return;
+                DownloadEngine.Result result = engine.download( url, localRepoFile );
+                if ( result != DownloadEngine.Result.NOT_FOUND )
+                    return result;
             }
             catch ( IOException e )
             {
                 System.err.println( "Failed to download "+url );
+                failed = true;
             }
         }
 
-        throw new IOException( "Failed to download "+localRepoFile );
+        if ( failed )
+            throw new IOException( "Failed to download "+localRepoFile );
+
+        // Keep asking for POMs we have a copy of, in case they are back
+        if ( journal != null && !localRepoFile.exists() )
+            journal.missing( localRepoFile );
+        throw new FileNotFoundException( "Not in any repository: "+localRepoFile );
     }
 }
@@ -0,0 +1,222 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the POMs in a repository, reading each directory once and handing POMs to a {@link Visitor} as they are
+ * found. With a parallelism of one, the walk happens on the calling thread, and the order is the same as that of the
+ * original File.listFiles based walk: subdirectories first, then the POMs of the directory itself. With more,
+ * subtrees are walked by a fork-join pool and the visitor is called from several threads in no particular order.
+ * <p>
+ * Entries named like the files that are normally found next to POMs in a Maven repository (jars, checksums,
+ * signatures and metadata) are taken to be files without asking the file system, which saves a stat call for most
+ * entries.
+ */
+public class RepositoryWalker
+{
+    private static final String[] FILE_SUFFIXES = {".jar", ".sha1", ".md5", ".asc", ".repositories", ".lastUpdated", ".etag"};
+
+    private final int parallelism;
+
+    private final AtomicLong directories = new AtomicLong();
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong poms = new AtomicLong();
+    private volatile long nanos;
+
+    public RepositoryWalker( int parallelism )
+    {
+        this.parallelism = parallelism;
+    }
+
+    public void walk( Path root, Visitor visitor ) throws IOException, InterruptedException
+    {
+        long start = System.nanoTime();
+        try
+        {
+            if ( parallelism <= 1 )
+            {
+                walkDirectory( root, visitor );
+            }
+            else
+            {
+                ForkJoinPool pool = new ForkJoinPool( parallelism );
+                try
+                {
+                    pool.invoke( new WalkTask( root, visitor ) );
+                }
+                catch ( WalkException e )
+                {
+                    Throwable cause = e.getCause();
+                    while ( cause instanceof WalkException )
+                    {
+                        cause = cause.getCause();
+                    }
+                    if ( cause instanceof InterruptedException || cause instanceof InterruptedIOException )
+                        throw new InterruptedException( cause.getMessage() );
+                    throw (IOException) cause;
+                }
+                finally
+                {
+                    pool.shutdownNow();
+                }
+            }
+        }
+        finally
+        {
+            nanos = System.nanoTime() - start;
+        }
+    }
+
+    public long getDirectories()
+    {
+        return directories.get();
+    }
+
+    public long getFiles()
+    {
+        return files.get();
+    }
+
+    public long getPoms()
+    {
+        return poms.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        double seconds = nanos / 1000000000D;
+        return String.format( "%d directories, %d files, %d POMs in %.1fs (%.0f directories/s, %.0f files/s)",
+                getDirectories(), getFiles(), getPoms(), seconds,
+                seconds == 0 ? 0D : getDirectories() / seconds, seconds == 0 ? 0D : getFiles() / seconds );
+    }
+
+    private void walkDirectory( Path directory, Visitor visitor ) throws IOException, InterruptedException
+    {
+        List<Path> subDirectories = new ArrayList<Path>();
+        List<Path> pomFiles = new ArrayList<Path>();
+        list( directory, subDirectories, pomFiles );
+
+        for ( Path subDirectory : subDirectories )
+        {
+            walkDirectory( subDirectory, visitor );
+        }
+
+        visit( pomFiles, visitor );
+    }
+
+    private void list( Path directory, List<Path> subDirectories, List<Path> pomFiles ) throws IOException
+    {
+        directories.incrementAndGet();
+        DirectoryStream<Path> entries = Files.newDirectoryStream( directory );
+        try
+        {
+            for ( Path entry : entries )
+            {
+                String name = entry.getFileName().toString();
+                if ( name.endsWith( ".pom" ) )
+                {
+                    files.incrementAndGet();
+                    pomFiles.add( entry );
+                }
+                else if ( !isKnownFile( name ) && Files.isDirectory( entry ) )
+                {
+                    subDirectories.add( entry );
+                }
+                else
+                {
+                    files.incrementAndGet();
+                }
+            }
+        }
+        finally
+        {
+            entries.close();
+        }
+    }
+
+    private void visit( List<Path> pomFiles, Visitor visitor ) throws IOException, InterruptedException
+    {
+        for ( Path pom : pomFiles )
+        {
+            poms.incrementAndGet();
+            visitor.visit( pom );
+        }
+    }
+
+    private static boolean isKnownFile( String name )
+    {
+        if ( name.startsWith( "maven-metadata" ) )
+            return true;
+        for ( String suffix : FILE_SUFFIXES )
+        {
+            if ( name.endsWith( suffix ) )
+                return true;
+        }
+        return false;
+    }
+
+    public interface Visitor
+    {
+        void visit( Path pom ) throws IOException, InterruptedException;
+    }
+
+    private class WalkTask
+        extends RecursiveAction
+    {
+        private final Path directory;
+        private final Visitor visitor;
+
+        private WalkTask( Path directory, Visitor visitor )
+        {
+            this.directory = directory;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute()
+        {
+            try
+            {
+                List<Path> subDirectories = new ArrayList<Path>();
+                List<Path> pomFiles = new ArrayList<Path>();
+                list( directory, subDirectories, pomFiles );
+
+                List<WalkTask> subTasks = new ArrayList<WalkTask>( subDirectories.size() );
+                for ( Path subDirectory : subDirectories )
+                {
+                    subTasks.add( new WalkTask( subDirectory, visitor ) );
+                }
+                invokeAll( subTasks );
+
+                visit( pomFiles, visitor );
+            }
+            catch ( IOException e )
+            {
+                throw new WalkException( e );
+            }
+            catch ( InterruptedException e )
+            {
+                throw new WalkException( e );
+            }
+        }
+    }
+
+    private static class WalkException
+        extends RuntimeException
+    {
+        private WalkException( Exception cause )
+        {
+            super( cause );
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches every directory of a repository for POMs being created, modified or deleted, and hands them out in
+ * batches. A batch is closed once nothing has happened for the quiet period, or when the maximum delay since its first
+ * event has passed, so a burst of writes ends up in one batch.
+ * <p>
+ * A batch closed by the maximum delay can split a file that is still being written. A POM that changed during the
+ * last quiet period, or whose size or modification time changed since its last event, is therefore held back and
+ * handed out in a later batch, once it has been left alone for a quiet period.
+ * <p>
+ * Every directory needs its own watch. On Linux the number of watches is limited by fs.inotify.max_user_watches,
+ * which has to be raised for a large repository.
+ */
+public class RepositoryWatcher
+    implements Closeable
+{
+    private final File repository;
+    private final long quietMillis;
+    private final long maxDelayMillis;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+    // Files held back from the last batch because they were still changing
+    private final Map<File, Touched> held = new LinkedHashMap<File, Touched>();
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    public RepositoryWatcher( File repository, long quietMillis, long maxDelayMillis ) throws IOException
+    {
+        this.repository = repository;
+        this.quietMillis = quietMillis;
+        this.maxDelayMillis = maxDelayMillis;
+
+        watchService = FileSystems.getDefault().newWatchService();
+        register( repository.toPath() );
+        logger.info( "Watching {} directories", directories.size() );
+    }
+
+    /**
+     * Wait for changes in the repository.
+     *
+     * @return POM files that were created, modified or deleted, and directories that were created or deleted.
+     * If events were lost, the repository itself is returned, to be compared in full. Empty if everything that
+     * changed is still changing.
+     */
+    public Set<File> nextBatch() throws InterruptedException, IOException
+    {
+        Map<File, Touched> touched = new LinkedHashMap<File, Touched>( held );
+        held.clear();
+
+        // Files that were held back are looked at again after a quiet period, even if nothing else happens
+        WatchKey key = touched.isEmpty() ? watchService.take() : watchService.poll( quietMillis, TimeUnit.MILLISECONDS );
+        long deadline = System.currentTimeMillis() + maxDelayMillis;
+        while ( key != null )
+        {
+            handle( key, touched );
+
+            long wait = Math.min( quietMillis, deadline - System.currentTimeMillis() );
+            key = wait > 0 ? watchService.poll( wait, TimeUnit.MILLISECONDS ) : null;
+        }
+
+        long now = System.currentTimeMillis();
+        Set<File> batch = new LinkedHashSet<File>();
+        for ( Map.Entry<File, Touched> entry : touched.entrySet() )
+        {
+            File file = entry.getKey();
+            Touched last = entry.getValue();
+            Touched current = new Touched( file, now );
+            if ( !file.isDirectory() && (now - last.time < quietMillis || !current.sameFile( last )) )
+                held.put( file, current );
+            else
+                batch.add( file );
+        }
+        if ( !held.isEmpty() )
+            logger.debug( "Holding back {} files that are still changing", held.size() );
+
+        return batch;
+    }
+
+    public void close() throws IOException
+    {
+        watchService.close();
+    }
+
+    private void handle( WatchKey key, Map<File, Touched> touched ) throws IOException
+    {
+        long now = System.currentTimeMillis();
+        Path directory = directories.get( key );
+        for ( WatchEvent<?> event : key.pollEvents() )
+        {
+            if ( event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null )
+            {
+                logger.warn( "Lost file system events, comparing the whole repository" );
+                touched.put( repository, new Touched( repository, now ) );
+                continue;
+            }
+
+            Path path = directory.resolve( (Path) event.context() );
+            if ( event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory( path ) )
+            {
+                // Anything written into it before the watch was registered is picked up by comparing the directory
+                register( path );
+                touched.put( path.toFile(), new Touched( path.toFile(), now ) );
+            }
+            else if ( event.kind() == StandardWatchEventKinds.ENTRY_DELETE || path.toString().endsWith( ".pom" ) )
+            {
+                touched.put( path.toFile(), new Touched( path.toFile(), now ) );
+            }
+        }
+
+        if ( !key.reset() )
+            directories.remove( key );
+    }
+
+    private void register( Path start ) throws IOException
+    {
+        Files.walkFileTree( start, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory( Path directory, BasicFileAttributes attributes ) throws IOException
+            {
+                WatchKey key = directory.register( watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE );
+                directories.put( key, directory );
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+    }
+
+    /**
+     * When a file was last seen changing, and its size and modification time then. Both are 0 once it is deleted.
+     */
+    private static class Touched
+    {
+        private final long time;
+        private final long size;
+        private final long lastModified;
+
+        private Touched( File file, long time )
+        {
+            this.time = time;
+            this.size = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        private boolean sameFile( Touched other )
+        {
+            return size == other.size && lastModified == other.lastModified;
+        }
+    }
+}
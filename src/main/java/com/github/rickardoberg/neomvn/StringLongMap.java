@@ -0,0 +1,121 @@
+package com.github.rickardoberg.neomvn;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from strings to non-negative longs, using open addressing with linear probing over parallel key and value
+ * arrays, so no entry objects or boxed values are allocated. Entries can not be removed.
+ */
+public class StringLongMap
+{
+    public static final long NONE = -1;
+
+    private static final float LOAD_FACTOR = 0.6F;
+
+    private String[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private long keyBytes;
+
+    public StringLongMap()
+    {
+        this( 1024 );
+    }
+
+    public StringLongMap( int expectedSize )
+    {
+        int capacity = Integer.highestOneBit( Math.max( 16, (int) (expectedSize / LOAD_FACTOR) ) - 1 ) << 1;
+        allocate( capacity );
+    }
+
+    /**
+     * @return the value for the key, or {@link #NONE}
+     */
+    public long get( String key )
+    {
+        int slot = hash( key ) & mask;
+        String existing;
+        while ( (existing = keys[slot]) != null )
+        {
+            if ( existing.equals( key ) )
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    /**
+     * Associate the key with the value unless the key is already present.
+     *
+     * @return the value now associated with the key
+     */
+    public long putIfAbsent( String key, long value )
+    {
+        int slot = hash( key ) & mask;
+        String existing;
+        while ( (existing = keys[slot]) != null )
+        {
+            if ( existing.equals( key ) )
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        keyBytes += 40 + key.length() * 2;
+        if ( ++size > keys.length * LOAD_FACTOR )
+            rehash();
+        return value;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return estimated heap bytes used by the tables and the key strings
+     */
+    public long memoryUsage()
+    {
+        return keys.length * 12L + keyBytes;
+    }
+
+    private void rehash()
+    {
+        String[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate( oldKeys.length << 1 );
+
+        for ( int i = 0; i < oldKeys.length; i++ )
+        {
+            String key = oldKeys[i];
+            if ( key != null )
+            {
+                int slot = hash( key ) & mask;
+                while ( keys[slot] != null )
+                {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate( int capacity )
+    {
+        keys = new String[capacity];
+        values = new long[capacity];
+        Arrays.fill( values, NONE );
+        mask = capacity - 1;
+    }
+
+    private static int hash( String key )
+    {
+        // String.hashCode is weak in the low bits for similar keys, so spread it before masking
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+
+/**
+ * POMs in a gzipped tar archive, read with commons-compress, which handles the ustar, GNU and pax variants of long
+ * names and large sizes. A tar.gz can only be read front to back, and parents have to be found in any order, so when
+ * the archive is opened the POM entries are copied, in one pass, into a temporary blob file next to an in-memory
+ * index of where each one is. Everything else in the archive is skipped over. POMs are then read from the blob file
+ * at their offset.
+ * <p/>
+ * An index of offsets into the archive itself would not help, since gzip can not be read from an offset without
+ * decompressing everything before it. The blob file needs as much free space in java.io.tmpdir as the POMs in the
+ * archive take uncompressed.
+ */
+public class TarPomArchive
+    extends PomArchive
+{
+    // Index values are the offset in the blob file shifted left by this, or'ed with the length
+    private static final int LENGTH_BITS = 24;
+
+    private final File blobFile;
+    private final RandomAccessFile blob;
+    private final FileChannel channel;
+    private final String root;
+    private final List<String> poms = new ArrayList<String>();
+    private final StringLongMap index;
+
+    public TarPomArchive( File file ) throws IOException
+    {
+        super( file );
+
+        blobFile = File.createTempFile( file.getName() + ".", ".poms" );
+        blobFile.deleteOnExit();
+
+        List<String> names = new ArrayList<String>();
+        List<Long> locations = new ArrayList<Long>();
+        InputStream in = new BufferedInputStream( new GZIPInputStream( new FileInputStream( file ), 1 << 16 ), 1 << 16 );
+        CountingOutputStream out = new CountingOutputStream(
+            new BufferedOutputStream( new FileOutputStream( blobFile ), 1 << 16 ) );
+        try
+        {
+            TarArchiveInputStream tar = new TarArchiveInputStream( in );
+            TarArchiveEntry entry;
+            while ( (entry = tar.getNextTarEntry()) != null )
+            {
+                if ( !entry.isFile() || !entry.getName().endsWith( ".pom" ) )
+                    continue;
+                if ( entry.getSize() >= 1L << LENGTH_BITS )
+                    throw new IOException( "POM too large: " + entry.getName() );
+
+                long offset = out.count;
+                IOUtils.copy( tar, out );
+                names.add( entry.getName() );
+                locations.add( offset << LENGTH_BITS | (out.count - offset) );
+            }
+        }
+        finally
+        {
+            in.close();
+            out.close();
+        }
+
+        root = repositoryRoot( names );
+        index = new StringLongMap( names.size() );
+        for ( int i = 0; i < names.size(); i++ )
+        {
+            String path = names.get( i ).substring( root.length() );
+            if ( index.putIfAbsent( path, locations.get( i ) ) == locations.get( i ) )
+                poms.add( path );
+        }
+
+        blob = new RandomAccessFile( blobFile, "r" );
+        channel = blob.getChannel();
+    }
+
+    public List<String> getPoms()
+    {
+        return poms;
+    }
+
+    public boolean contains( String path )
+    {
+        return index.get( path ) != StringLongMap.NONE;
+    }
+
+    protected InputStream open( String path ) throws IOException
+    {
+        long location = index.get( path );
+        if ( location == StringLongMap.NONE )
+            throw new FileNotFoundException( path );
+
+        long position = location >>> LENGTH_BITS;
+        ByteBuffer buffer = ByteBuffer.allocate( (int) (location & ((1L << LENGTH_BITS) - 1)) );
+        while ( buffer.hasRemaining() )
+        {
+            // Positional reads, so POMs can be read from many threads at once
+            if ( channel.read( buffer, position + buffer.position() ) < 0 )
+                throw new EOFException( path );
+        }
+        return new ByteArrayInputStream( buffer.array() );
+    }
+
+    public void close() throws IOException
+    {
+        try
+        {
+            blob.close();
+        }
+        finally
+        {
+            blobFile.delete();
+        }
+    }
+
+    private static class CountingOutputStream
+        extends FilterOutputStream
+    {
+        private long count;
+
+        CountingOutputStream( OutputStream out )
+        {
+            super( out );
+        }
+
+        @Override
+        public void write( int b ) throws IOException
+        {
+            out.write( b );
+            count++;
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) throws IOException
+        {
+            out.write( b, off, len );
+            count += len;
+        }
+    }
+}
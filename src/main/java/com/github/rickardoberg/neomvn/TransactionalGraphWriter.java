@@ -0,0 +1,470 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the graph through an embedded {@link GraphDatabaseService}. Nodes are looked up in a {@link NodeIdDictionary}
+ * rather than in the indexes. When updating an existing store, {@link #load()} fills the dictionary with the nodes
+ * already in it.
+ * <p/>
+ * Transactions are sized by the work done rather than by the number of POMs, since a POM with 80 dependencies puts far
+ * more in a transaction than one with none. Every node and relationship created or deleted, property set and index
+ * entry added counts as one operation, placeholders for missing versions included, and a transaction is committed at
+ * the first POM boundary after it reaches the batch size. A transaction is also committed early if the heap still in
+ * use after garbage collection goes over a fraction of the maximum heap.
+ * <p/>
+ * Artifacts that got new versions, or lost them, have the "versionOrder" of their versions and their LATEST_VERSION
+ * and LATEST_RELEASE relationships brought up to date by {@link #finish()}, see {@link VersionOrder}.
+ * <p/>
+ * With the compact model, see {@link CompactModel}, coordinates are only stored on the node they belong to and only
+ * the index entries that queries start from are added. An existing store keeps the model it was created with.
+ * <p/>
+ * Node lookups, relationship creation and commits are timed in {@link ImportMetrics}, along with commit sizes.
+ */
+public class TransactionalGraphWriter
+    implements IncrementalGraphWriter
+{
+    public static final int DEFAULT_BATCH_SIZE = 30000;
+    public static final double DEFAULT_HEAP_LIMIT = 0.8;
+
+    // Commits smaller than this are not worth making for heap pressure, they would not free much
+    private static final int MIN_HEAP_COMMIT = 1000;
+
+    private final GraphDatabaseService graphDatabaseService;
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private Index<Node> groups;
+    private Index<Node> artifacts;
+    private Index<Node> versions;
+    private DynamicRelationshipType has_artifact;
+    private final DynamicRelationshipType has_version;
+    private DynamicRelationshipType has_dependency;
+    private final DynamicRelationshipType latest_version = DynamicRelationshipType.withName( "LATEST_VERSION" );
+    private final DynamicRelationshipType latest_release = DynamicRelationshipType.withName( "LATEST_RELEASE" );
+
+    private final NodeIdDictionary ids = new NodeIdDictionary();
+    private final VersionCatalog catalog = new VersionCatalog();
+    private final ImportMetrics metrics;
+    private final int batchSize;
+    private final double heapLimit;
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+    private final Set<Long> changedArtifacts = new HashSet<Long>();
+    private boolean compact;
+
+    private Transaction tx;
+    private int operations = 0;
+
+    public TransactionalGraphWriter( File dbPath )
+    {
+        this( dbPath, new ImportMetrics() );
+    }
+
+    public TransactionalGraphWriter( File dbPath, ImportMetrics metrics )
+    {
+        this( dbPath, metrics, DEFAULT_BATCH_SIZE );
+    }
+
+    /**
+     * @param batchSize number of operations per transaction
+     */
+    public TransactionalGraphWriter( File dbPath, ImportMetrics metrics, int batchSize )
+    {
+        this( dbPath, metrics, batchSize, DEFAULT_HEAP_LIMIT );
+    }
+
+    /**
+     * @param batchSize number of operations per transaction
+     * @param heapLimit fraction of the maximum heap that may be in use after garbage collection before a transaction
+     * is committed early, or 0 to never commit early
+     */
+    public TransactionalGraphWriter( File dbPath, ImportMetrics metrics, int batchSize, double heapLimit )
+    {
+        this( dbPath, metrics, batchSize, heapLimit, false );
+    }
+
+    /**
+     * @param compact write the compact model
+     */
+    public TransactionalGraphWriter( File dbPath, ImportMetrics metrics, int batchSize, double heapLimit, boolean compact )
+    {
+        this.metrics = metrics;
+        this.compact = compact;
+        this.batchSize = batchSize;
+        this.heapLimit = heapLimit;
+        for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+        {
+            if ( pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() )
+                heapPools.add( pool );
+        }
+
+        graphDatabaseService = new GraphDatabaseFactory().newEmbeddedDatabase( dbPath.getAbsolutePath() );
+        groups = graphDatabaseService.index().forNodes( "groups" );
+        artifacts = graphDatabaseService.index().forNodes( "artifacts" );
+        versions = graphDatabaseService.index().forNodes( "versions" );
+
+        has_artifact = DynamicRelationshipType.withName( "HAS_ARTIFACT" );
+        has_version = DynamicRelationshipType.withName( "HAS_VERSION" );
+        has_dependency = DynamicRelationshipType.withName( "HAS_DEPENDENCY" );
+
+        tx = graphDatabaseService.beginTx();
+    }
+
+    /**
+     * Register all group, artifact and version nodes in the store in the dictionary, and versions that are not
+     * placeholders in the catalog. New nodes are written in the model of the nodes already there.
+     */
+    public void load()
+    {
+        boolean first = true;
+        for ( Node node : GlobalGraphOperations.at( graphDatabaseService ).getAllNodes() )
+        {
+            if ( node.hasProperty( "version" ) )
+            {
+                if ( first && CompactModel.isCompact( node ) != compact )
+                {
+                    compact = !compact;
+                    logger.info( "Store uses the {} model, writing that", compact ? "compact" : "full" );
+                }
+                first = false;
+
+                String groupId = CompactModel.getGroupId( node );
+                String artifactId = CompactModel.getArtifactId( node );
+                String version = (String) node.getProperty( "version" );
+                ids.version( groupId, artifactId, version, node.getId() );
+                if ( !node.hasProperty( "missing" ) )
+                    catalog.add( groupId, artifactId, version );
+            }
+            else if ( node.hasProperty( "artifactId" ) )
+                ids.artifact( CompactModel.getGroupId( node ), (String) node.getProperty( "artifactId" ), node.getId() );
+            else if ( node.hasProperty( "groupId" ) )
+                ids.group( (String) node.getProperty( "groupId" ), node.getId() );
+        }
+        logger.info( "Loaded {}", ids );
+    }
+
+    public void version( PomRecord pom )
+    {
+        long start = System.nanoTime();
+        long versionNodeId = ids.version( pom.groupId, pom.artifactId, pom.version );
+        metrics.lookup.recordSince( start );
+        catalog.add( pom.groupId, pom.artifactId, pom.version );
+        if ( versionNodeId == NodeIdDictionary.NONE )
+        {
+            artifact( pom.groupId, pom.artifactId, pom.version, pom.name );
+            return;
+        }
+
+        // Already there, either from an earlier import or as a placeholder for a missing POM that has now appeared
+        Node versionNode = graphDatabaseService.getNodeById( versionNodeId );
+        versionNode.removeProperty( "missing" );
+        if ( !compact )
+        {
+            versions.remove( versionNode, "name" );
+            versionNode.setProperty( "name", pom.name );
+            versions.add( versionNode, "name", pom.name );
+            operations += 3;
+        }
+        Node artifactIdNode = versionNode.getSingleRelationship( has_version, Direction.INCOMING ).getStartNode();
+        artifactIdNode.setProperty( "name", pom.name );
+        changedArtifacts.add( artifactIdNode.getId() );
+        operations += 2;
+    }
+
+    public void dependencies( final PomRecord pom )
+    {
+        // Written in the current batch transaction, like the versions
+        visitVersion( pom.groupId, pom.artifactId, pom.version, new Main.Visitor<Node>()
+        {
+            public void accept( final Node versionNode )
+            {
+                removeDependencies( versionNode );
+
+                // Found artifact, now add dependencies
+                for ( final PomRecord.DependencyRecord dependency : pom.dependencies )
+                {
+                    String version = catalog.resolve( dependency.groupId, dependency.artifactId, dependency.version );
+                    visitVersion( dependency.groupId, dependency.artifactId, version,
+                            new Main.Visitor<Node>()
+                            {
+                                public void accept( Node dependencyVersionNode )
+                                {
+                                    long start = System.nanoTime();
+                                    Relationship dependencyRel = versionNode.createRelationshipTo(
+                                            dependencyVersionNode, has_dependency );
+
+                                    dependencyRel.setProperty( "scope", Main.withDefault(dependency.scope, "compile" ));
+                                    dependencyRel.setProperty( "optional", dependency.optional );
+                                    operations += 3;
+                                    if ( VersionRange.isRange( dependency.version ) )
+                                    {
+                                        dependencyRel.setProperty( "versionRange", dependency.version );
+                                        operations++;
+                                    }
+                                    metrics.relationship.recordSince( start );
+                                }
+                            } );
+                }
+            }
+        } );
+    }
+
+    public void remove( String groupId, String artifactId, String version )
+    {
+        long versionNodeId = ids.version( groupId, artifactId, version );
+        if ( versionNodeId != NodeIdDictionary.NONE )
+        {
+            catalog.remove( groupId, artifactId, version );
+            Node versionNode = graphDatabaseService.getNodeById( versionNodeId );
+            versionNode.setProperty( "missing", true );
+            operations++;
+            metrics.missing();
+            removeDependencies( versionNode );
+            changedArtifacts.add( versionNode.getSingleRelationship( has_version, Direction.INCOMING ).getStartNode().getId() );
+        }
+    }
+
+    public void batch()
+    {
+        if ( operations >= batchSize )
+            commit( false );
+        else if ( heapLimit > 0 && operations >= MIN_HEAP_COMMIT && isHeapFull() )
+            commit( true );
+    }
+
+    public void finish()
+    {
+        logger.info( "Node id dictionary: {}", ids );
+        logger.info( "Version catalog: {}", catalog );
+
+        versionOrder();
+        commit( false );
+    }
+
+    public void shutdown()
+    {
+        tx.finish();
+        graphDatabaseService.shutdown();
+    }
+
+    /**
+     * @param early true if committed because the heap is filling up
+     */
+    private void commit( boolean early )
+    {
+        long start = System.nanoTime();
+        tx.success();
+        tx.finish();
+        metrics.commit.recordSince( start );
+        if ( operations > 0 )
+            metrics.transaction( operations, early );
+        operations = 0;
+        tx = graphDatabaseService.beginTx();
+    }
+
+    /**
+     * Heap in use after the last collection is what is actually live, unlike the current usage, which includes
+     * garbage and would make every check look full just before a collection.
+     */
+    private boolean isHeapFull()
+    {
+        long used = 0;
+        if ( heapPools.isEmpty() )
+        {
+            Runtime runtime = Runtime.getRuntime();
+            used = runtime.totalMemory() - runtime.freeMemory();
+        }
+        else
+        {
+            for ( MemoryPoolMXBean pool : heapPools )
+            {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if ( usage != null )
+                    used += usage.getUsed();
+            }
+        }
+        return used > heapLimit * Runtime.getRuntime().maxMemory();
+    }
+
+    private Node artifact( String groupId, String artifactId, String version, String name )
+    {
+        logger.debug( "{} {} {}", groupId, artifactId, version );
+
+        long start = System.nanoTime();
+        Node groupIdNode = null;
+        long groupIdNodeId = ids.group( groupId );
+        metrics.lookup.recordSince( start );
+        if (groupIdNodeId == NodeIdDictionary.NONE)
+        {
+            groupIdNode = graphDatabaseService.createNode();
+            groupIdNode.setProperty( "groupId", groupId );
+            autoIndex( groups, groupIdNode );
+            ids.group( groupId, groupIdNode.getId() );
+            operations += 2;
+        }
+
+        Node artifactIdNode;
+        start = System.nanoTime();
+        long artifactIdNodeId = ids.artifact( groupId, artifactId );
+        metrics.lookup.recordSince( start );
+        boolean newArtifact = artifactIdNodeId == NodeIdDictionary.NONE;
+        if (newArtifact)
+        {
+            artifactIdNode = graphDatabaseService.createNode();
+            if ( !compact )
+                artifactIdNode.setProperty( "groupId", groupId );
+            artifactIdNode.setProperty( "artifactId", artifactId );
+            autoIndex( artifacts, artifactIdNode );
+            ids.artifact( groupId, artifactId, artifactIdNode.getId() );
+            operations += 3;
+        }
+        else
+        {
+            artifactIdNode = graphDatabaseService.getNodeById( artifactIdNodeId );
+        }
+
+        Node versionNode = graphDatabaseService.createNode();
+        artifactIdNode.setProperty( "name", name );
+        if ( compact )
+        {
+            versionNode.setProperty( "version", version );
+            operations += 3;
+        }
+        else
+        {
+            versionNode.setProperty( "groupId", groupId );
+            versionNode.setProperty( "artifactId", artifactId );
+            versionNode.setProperty( "version", version );
+            versionNode.setProperty( "name", name );
+            autoIndex( versions, versionNode );
+            operations += 6;
+        }
+        versions.add( versionNode, "gav", NodeIdDictionary.gav( groupId, artifactId, version ) );
+        ids.version( groupId, artifactId, version, versionNode.getId() );
+        operations++;
+
+        if (newArtifact)
+        {
+            if (groupIdNode == null)
+                groupIdNode = graphDatabaseService.getNodeById( groupIdNodeId );
+            groupIdNode.createRelationshipTo( artifactIdNode, has_artifact );
+            operations++;
+        }
+
+        artifactIdNode.createRelationshipTo( versionNode, has_version );
+        operations++;
+        changedArtifacts.add( artifactIdNode.getId() );
+
+        return versionNode;
+    }
+
+    private void versionOrder()
+    {
+        if ( changedArtifacts.isEmpty() )
+            return;
+
+        long start = System.currentTimeMillis();
+        for ( long artifactIdNodeId : changedArtifacts )
+        {
+            Node artifactIdNode = graphDatabaseService.getNodeById( artifactIdNodeId );
+            VersionOrder order = new VersionOrder();
+            for ( Relationship hasVersion : artifactIdNode.getRelationships( has_version, Direction.OUTGOING ) )
+            {
+                Node versionNode = hasVersion.getEndNode();
+                order.add( versionNode.getId(), (String) versionNode.getProperty( "version" ),
+                        versionNode.hasProperty( "missing" ) );
+            }
+
+            for ( int i = 0; i < order.size(); i++ )
+            {
+                Node versionNode = graphDatabaseService.getNodeById( order.getNode( i ) );
+                if ( !Integer.valueOf( i ).equals( versionNode.getProperty( "versionOrder", null ) ) )
+                {
+                    versionNode.setProperty( "versionOrder", i );
+                    operations++;
+                }
+            }
+            latest( artifactIdNode, latest_version, order.getLatest() );
+            latest( artifactIdNode, latest_release, order.getLatestRelease() );
+            batch();
+        }
+        logger.info( "Ordered the versions of {} artifacts in {} ms", changedArtifacts.size(),
+                System.currentTimeMillis() - start );
+        changedArtifacts.clear();
+    }
+
+    private void latest( Node artifactIdNode, DynamicRelationshipType type, long versionNodeId )
+    {
+        Relationship current = artifactIdNode.getSingleRelationship( type, Direction.OUTGOING );
+        if ( current != null && current.getEndNode().getId() == versionNodeId )
+            return;
+
+        if ( current != null )
+        {
+            current.delete();
+            operations++;
+        }
+        if ( versionNodeId != VersionOrder.NONE )
+        {
+            artifactIdNode.createRelationshipTo( graphDatabaseService.getNodeById( versionNodeId ), type );
+            operations++;
+        }
+    }
+
+    private void removeDependencies( Node versionNode )
+    {
+        for ( Relationship dependency : versionNode.getRelationships( has_dependency, Direction.OUTGOING ) )
+        {
+            dependency.delete();
+            operations++;
+        }
+    }
+
+    private void autoIndex( Index<Node> versions, Node node )
+    {
+        for ( String property : node.getPropertyKeys() )
+        {
+            versions.add(node, property, node.getProperty( property ));
+            operations++;
+        }
+    }
+
+    private boolean visitVersion( String groupId, String artifactId, String version, Main.Visitor<Node> visitor )
+    {
+        long start = System.nanoTime();
+        long versionNodeId = ids.version( groupId, artifactId, version );
+        metrics.lookup.recordSince( start );
+        if (versionNodeId != NodeIdDictionary.NONE)
+        {
+            visitor.accept( graphDatabaseService.getNodeById( versionNodeId ) );
+            return true;
+        }
+
+        // Broken lookup - create fake node and mark as
+        Node fakeNode = artifact( groupId, artifactId, version, artifactId );
+        fakeNode.setProperty( "missing", true );
+        operations++;
+        metrics.missing();
+        visitor.accept( fakeNode );
+
+        return false;
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.rickardoberg.neomvn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+/**
+ * The versions of each artifact that are in the repository, for resolving version ranges in dependencies to the
+ * highest version that exists, the way Maven would with the same repository. Versions are collected while writing
+ * the version nodes, and the versions of an artifact are sorted in {@link ComparableVersion} order the first time a
+ * range on it is resolved, after which each restriction of a range is a binary search. Releases are preferred over
+ * snapshots, as with a repository that only has releases enabled, so [1.0,2.0) resolves to 1.5 rather than
+ * 2.0-SNAPSHOT, unless the range only has snapshots.
+ * <p/>
+ * A range that no known version satisfies resolves to {@link VersionRange#getFallback()}, and a malformed one to
+ * itself, so the dependency still gets a placeholder with a sensible version.
+ */
+public class VersionCatalog
+{
+    private final Map<String, Versions> artifacts = new HashMap<String, Versions>();
+
+    private long resolved;
+    private long unresolved;
+
+    public void add( String groupId, String artifactId, String version )
+    {
+        String key = key( groupId, artifactId );
+        Versions versions = artifacts.get( key );
+        if ( versions == null )
+            artifacts.put( key, versions = new Versions() );
+        versions.add( version );
+    }
+
+    public void remove( String groupId, String artifactId, String version )
+    {
+        Versions versions = artifacts.get( key( groupId, artifactId ) );
+        if ( versions != null )
+            versions.remove( version );
+    }
+
+    /**
+     * @return the version itself if it is not a range, otherwise the highest known version in the range, or a fallback
+     */
+    public String resolve( String groupId, String artifactId, String version )
+    {
+        if ( !VersionRange.isRange( version ) )
+            return version;
+
+        VersionRange range;
+        try
+        {
+            range = new VersionRange( version );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            unresolved++;
+            return version;
+        }
+
+        Versions versions = artifacts.get( key( groupId, artifactId ) );
+        ComparableVersion highest = versions == null ? null : versions.highest( range );
+        if ( highest == null )
+        {
+            unresolved++;
+            return range.getFallback();
+        }
+        resolved++;
+        return highest.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "%d artifacts, %d ranges resolved to a known version, %d not", artifacts.size(), resolved,
+                unresolved );
+    }
+
+    private static String key( String groupId, String artifactId )
+    {
+        return groupId + ':' + artifactId;
+    }
+
+    private static class Versions
+    {
+        // Added but not yet sorted in
+        private List<String> added = new ArrayList<String>( 2 );
+        private ComparableVersion[] sorted = new ComparableVersion[0];
+
+        private void add( String version )
+        {
+            added.add( version );
+        }
+
+        private void remove( String version )
+        {
+            sort();
+            List<ComparableVersion> kept = new ArrayList<ComparableVersion>( Arrays.asList( sorted ) );
+            for ( int i = kept.size() - 1; i >= 0; i-- )
+            {
+                if ( kept.get( i ).toString().equals( version ) )
+                    kept.remove( i );
+            }
+            sorted = kept.toArray( new ComparableVersion[kept.size()] );
+        }
+
+        private ComparableVersion highest( VersionRange range )
+        {
+            sort();
+            ComparableVersion highest = null;
+            for ( VersionRange.Restriction restriction : range.getRestrictions() )
+            {
+                ComparableVersion candidate = null;
+                for ( int i = belowUpper( restriction ); i >= 0 && restriction.isAboveLower( sorted[i] ); i-- )
+                {
+                    if ( candidate == null || isRelease( sorted[i] ) )
+                        candidate = sorted[i];
+                    if ( isRelease( candidate ) )
+                        break;
+                }
+
+                if ( candidate != null && isBetter( candidate, highest ) )
+                    highest = candidate;
+            }
+            return highest;
+        }
+
+        private static boolean isBetter( ComparableVersion candidate, ComparableVersion highest )
+        {
+            if ( highest == null )
+                return true;
+            if ( isRelease( candidate ) != isRelease( highest ) )
+                return isRelease( candidate );
+            return candidate.compareTo( highest ) > 0;
+        }
+
+        private static boolean isRelease( ComparableVersion version )
+        {
+            return VersionOrder.isRelease( version.toString() );
+        }
+
+        /**
+         * @return the index of the highest version within the upper bound of a restriction, or -1 if there is none
+         */
+        private int belowUpper( VersionRange.Restriction restriction )
+        {
+            int low = 0;
+            int high = sorted.length - 1;
+            while ( low <= high )
+            {
+                int middle = (low + high) >>> 1;
+                if ( restriction.isBelowUpper( sorted[middle] ) )
+                    low = middle + 1;
+                else
+                    high = middle - 1;
+            }
+            return high;
+        }
+
+        private void sort()
+        {
+            if ( added.isEmpty() )
+                return;
+
+            ComparableVersion[] versions = Arrays.copyOf( sorted, sorted.length + added.size() );
+            for ( int i = 0; i < added.size(); i++ )
+            {
+                versions[sorted.length + i] = new ComparableVersion( added.get( i ) );
+            }
+            Arrays.sort( versions );
+            sorted = versions;
+            added = new ArrayList<String>( 2 );
+        }
+    }
+}
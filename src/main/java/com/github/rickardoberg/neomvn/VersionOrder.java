@@ -0,0 +1,111 @@
+package com.github.rickardoberg.neomvn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+/**
+ * The versions of one artifact in {@link ComparableVersion} order, for the "versionOrder" property of version nodes
+ * and the LATEST_VERSION and LATEST_RELEASE relationships of artifact nodes. Placeholders for versions that are not
+ * in the repository are ordered with the others, but are never the latest, since nothing is known about them.
+ */
+public class VersionOrder
+{
+    public static final long NONE = -1;
+
+    private final List<Version> versions = new ArrayList<Version>();
+    private boolean sorted = true;
+
+    /**
+     * @return true unless the version is a snapshot
+     */
+    public static boolean isRelease( String version )
+    {
+        return !version.endsWith( "-SNAPSHOT" );
+    }
+
+    public void add( long node, String version, boolean missing )
+    {
+        versions.add( new Version( node, version, missing ) );
+        sorted = false;
+    }
+
+    public int size()
+    {
+        return versions.size();
+    }
+
+    /**
+     * @param order position from 0 for the oldest version
+     * @return the node of the version at that position
+     */
+    public long getNode( int order )
+    {
+        sort();
+        return versions.get( order ).node;
+    }
+
+    public long getLatest()
+    {
+        return latest( false );
+    }
+
+    public long getLatestRelease()
+    {
+        return latest( true );
+    }
+
+    private long latest( boolean release )
+    {
+        sort();
+        for ( int i = versions.size() - 1; i >= 0; i-- )
+        {
+            Version version = versions.get( i );
+            if ( !version.missing && (!release || isRelease( version.version )) )
+                return version.node;
+        }
+        return NONE;
+    }
+
+    private void sort()
+    {
+        if ( !sorted )
+        {
+            // Parsed only while sorting, since the bulk import keeps the versions of every artifact until the end
+            for ( Version version : versions )
+            {
+                version.comparable = new ComparableVersion( version.version );
+            }
+            // Stable, so versions that compare equal, like 1.0 and 1.0.0, stay in the order they were added
+            Collections.sort( versions );
+            for ( Version version : versions )
+            {
+                version.comparable = null;
+            }
+            sorted = true;
+        }
+    }
+
+    private static class Version
+        implements Comparable<Version>
+    {
+        private final long node;
+        private final String version;
+        private final boolean missing;
+        private ComparableVersion comparable;
+
+        private Version( long node, String version, boolean missing )
+        {
+            this.node = node;
+            this.version = version;
+            this.missing = missing;
+        }
+
+        public int compareTo( Version other )
+        {
+            return comparable.compareTo( other.comparable );
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.rickardoberg.neomvn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+/**
+ * A Maven version range, such as "[1.0,2.0)", "(,1.0]", "[1.2]" or "[1.0,1.2),(1.2,)": one or more restrictions
+ * separated by commas, each with an optional lower and upper bound that is inclusive with '[' or ']' and exclusive
+ * with '(' or ')'. A version without brackets is not a range, but a soft requirement for that version.
+ */
+public class VersionRange
+{
+    private final String spec;
+    private final List<Restriction> restrictions = new ArrayList<Restriction>();
+
+    public static boolean isRange( String version )
+    {
+        return version.startsWith( "[" ) || version.startsWith( "(" );
+    }
+
+    /**
+     * @return the version to use for a range when no version in it is known, see {@link #getFallback()}, or the
+     * version itself if it is not a range or can not be parsed
+     */
+    public static String fallback( String version )
+    {
+        if ( !isRange( version ) )
+            return version;
+        try
+        {
+            return new VersionRange( version ).getFallback();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return version;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the range is malformed
+     */
+    public VersionRange( String spec )
+    {
+        this.spec = spec;
+
+        String rest = spec.trim();
+        while ( rest.length() > 0 )
+        {
+            if ( !isRange( rest ) )
+                throw new IllegalArgumentException( "Not a version range: " + spec );
+
+            int end = end( rest );
+            if ( end < 0 )
+                throw new IllegalArgumentException( "Unbounded version range: " + spec );
+            restrictions.add( new Restriction( rest.substring( 0, end + 1 ), spec ) );
+
+            rest = rest.substring( end + 1 ).trim();
+            if ( rest.startsWith( "," ) )
+                rest = rest.substring( 1 ).trim();
+        }
+
+        if ( restrictions.isEmpty() )
+            throw new IllegalArgumentException( "Empty version range: " + spec );
+    }
+
+    public List<Restriction> getRestrictions()
+    {
+        return restrictions;
+    }
+
+    public boolean contains( ComparableVersion version )
+    {
+        for ( Restriction restriction : restrictions )
+        {
+            if ( restriction.contains( version ) )
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the version to point a dependency at when no version in the range is known: the upper bound of the
+     * last restriction if it is inclusive, otherwise its lower bound, otherwise whatever bound it has
+     */
+    public String getFallback()
+    {
+        Restriction last = restrictions.get( restrictions.size() - 1 );
+        if ( last.upper != null && last.upperInclusive )
+            return last.upper.toString();
+        if ( last.lower != null )
+            return last.lower.toString();
+        if ( last.upper != null )
+            return last.upper.toString();
+        return spec;
+    }
+
+    @Override
+    public String toString()
+    {
+        return spec;
+    }
+
+    private static int end( String rest )
+    {
+        int bracket = rest.indexOf( ']' );
+        int parenthesis = rest.indexOf( ')' );
+        if ( bracket < 0 )
+            return parenthesis;
+        if ( parenthesis < 0 )
+            return bracket;
+        return Math.min( bracket, parenthesis );
+    }
+
+    public static class Restriction
+    {
+        private final ComparableVersion lower;
+        private final boolean lowerInclusive;
+        private final ComparableVersion upper;
+        private final boolean upperInclusive;
+
+        private Restriction( String restriction, String spec )
+        {
+            lowerInclusive = restriction.startsWith( "[" );
+            upperInclusive = restriction.endsWith( "]" );
+            String bounds = restriction.substring( 1, restriction.length() - 1 );
+
+            int comma = bounds.indexOf( ',' );
+            if ( comma < 0 )
+            {
+                // [1.0] is exactly 1.0
+                if ( !lowerInclusive || !upperInclusive || bounds.trim().length() == 0 )
+                    throw new IllegalArgumentException( "Single version must be surrounded by []: " + spec );
+                lower = upper = new ComparableVersion( bounds.trim() );
+            }
+            else
+            {
+                String lowerBound = bounds.substring( 0, comma ).trim();
+                String upperBound = bounds.substring( comma + 1 ).trim();
+                lower = lowerBound.length() == 0 ? null : new ComparableVersion( lowerBound );
+                upper = upperBound.length() == 0 ? null : new ComparableVersion( upperBound );
+                if ( lower != null && upper != null && lower.compareTo( upper ) > 0 )
+                    throw new IllegalArgumentException( "Range defies version ordering: " + spec );
+            }
+        }
+
+        public ComparableVersion getUpper()
+        {
+            return upper;
+        }
+
+        public boolean isUpperInclusive()
+        {
+            return upperInclusive;
+        }
+
+        public boolean isAboveLower( ComparableVersion version )
+        {
+            if ( lower == null )
+                return true;
+            int comparison = version.compareTo( lower );
+            return lowerInclusive ? comparison >= 0 : comparison > 0;
+        }
+
+        public boolean isBelowUpper( ComparableVersion version )
+        {
+            if ( upper == null )
+                return true;
+            int comparison = version.compareTo( upper );
+            return upperInclusive ? comparison <= 0 : comparison < 0;
+        }
+
+        public boolean contains( ComparableVersion version )
+        {
+            return isAboveLower( version ) && isBelowUpper( version );
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * POMs in a zip archive, read through the zip {@link FileSystem} provider and found with the same
+ * {@link RepositoryWalker} as in a repository directory. The provider indexes the central directory at the end of the
+ * zip when it is opened, so POMs are read in place.
+ */
+public class ZipPomArchive
+    extends PomArchive
+{
+    private final FileSystem zip;
+    private final String root;
+    private final List<String> poms = new ArrayList<String>();
+
+    public ZipPomArchive( File file ) throws IOException
+    {
+        super( file );
+        zip = FileSystems.newFileSystem( file.toPath(), (ClassLoader) null );
+
+        final List<String> names = new ArrayList<String>();
+        try
+        {
+            for ( Path directory : zip.getRootDirectories() )
+            {
+                new RepositoryWalker( 1 ).walk( directory, new RepositoryWalker.Visitor()
+                {
+                    public void visit( Path pom )
+                    {
+                        // Entry names, without the leading slash of the file system path
+                        names.add( pom.toString().substring( 1 ) );
+                    }
+                } );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            zip.close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while reading " + file );
+        }
+
+        root = repositoryRoot( names );
+        for ( String name : names )
+        {
+            poms.add( name.substring( root.length() ) );
+        }
+    }
+
+    public List<String> getPoms()
+    {
+        return poms;
+    }
+
+    public boolean contains( String path )
+    {
+        return Files.isRegularFile( zip.getPath( "/" + root + path ) );
+    }
+
+    protected InputStream open( String path ) throws IOException
+    {
+        Path pom = zip.getPath( "/" + root + path );
+        if ( !Files.isRegularFile( pom ) )
+            throw new FileNotFoundException( path );
+        return Files.newInputStream( pom );
+    }
+
+    public void close() throws IOException
+    {
+        zip.close();
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PomManifestTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File repository;
+    private PomManifest manifest;
+
+    @Before
+    public void repository() throws IOException
+    {
+        repository = folder.getRoot();
+        manifest = new PomManifest();
+
+        add( record( "org.example", "parent", "1.0", null, Collections.<String>emptyList() ) );
+        add( record( "org.example", "bom", "1.0", null, Collections.<String>emptyList() ) );
+        add( record( "org.example", "lib", "1.0", null, Collections.<String>emptyList() ) );
+        add( record( "org.example", "child", "1.0", "org.example:parent:1.0", Collections.<String>emptyList() ) );
+        add( record( "org.example", "user", "1.0", null, Arrays.asList( "org.example:bom:1.0" ) ) );
+        add( record( "org.example", "ranged", "1.0", null, Collections.<String>emptyList(),
+                new PomRecord.DependencyRecord( "org.example", "lib", "[1.0,2.0)", null, false ) ) );
+        add( record( "org.example", "pinned", "1.0", null, Collections.<String>emptyList(),
+                new PomRecord.DependencyRecord( "org.example", "lib", "1.0", null, false ) ) );
+    }
+
+    @Test
+    public void unchangedRepositoryHasNoChanges() throws IOException
+    {
+        PomManifest.Changes changes = manifest.changes( repository );
+
+        assertEquals( 0, changes.changed.size() );
+        assertEquals( 0, changes.removed.size() );
+    }
+
+    @Test
+    public void changedParentReimportsChildren() throws IOException
+    {
+        write( "org.example", "parent", "1.0", "changed" );
+
+        assertEquals( Arrays.asList( "parent", "child" ), artifactIds( manifest.changes( repository ).changed ) );
+    }
+
+    @Test
+    public void changedBomReimportsPomsImportingIt() throws IOException
+    {
+        write( "org.example", "bom", "1.0", "changed" );
+
+        assertEquals( Arrays.asList( "bom", "user" ), artifactIds( manifest.changes( repository ).changed ) );
+    }
+
+    @Test
+    public void newVersionReimportsRangeDependents() throws IOException
+    {
+        write( "org.example", "lib", "1.5", "new" );
+
+        assertEquals( Arrays.asList( "lib", "ranged" ), artifactIds( manifest.changes( repository ).changed ) );
+    }
+
+    @Test
+    public void removedVersionReimportsRangeDependents() throws IOException
+    {
+        pom( "org.example", "lib", "1.0" ).delete();
+
+        PomManifest.Changes changes = manifest.changes( repository );
+        assertEquals( 1, changes.removed.size() );
+        assertEquals( Arrays.asList( "ranged" ), artifactIds( changes.changed ) );
+    }
+
+    @Test
+    public void importsAndRangesAreSaved() throws IOException
+    {
+        File file = folder.newFile( "manifest.txt" );
+        manifest.save( file );
+        manifest = PomManifest.load( file );
+
+        write( "org.example", "bom", "1.0", "changed" );
+        write( "org.example", "lib", "1.5", "new" );
+        assertEquals( new HashSet<String>( Arrays.asList( "bom", "lib", "user", "ranged" ) ),
+                new HashSet<String>( artifactIds( manifest.changes( repository ).changed ) ) );
+    }
+
+    @Test
+    public void artifactOfRepositoryLayout()
+    {
+        assertEquals( "org.example:lib", PomManifest.artifactOf( "org/example/lib/1.0/lib-1.0.pom" ) );
+        assertNull( PomManifest.artifactOf( "lib-1.0.pom" ) );
+        assertNull( PomManifest.artifactOf( "org/example/lib/1.0/other.pom" ) );
+    }
+
+    private PomRecord record( String groupId, String artifactId, String version, String parent, List<String> imports,
+                              PomRecord.DependencyRecord... dependencies )
+    {
+        return new PomRecord( groupId, artifactId, version, artifactId, parent, imports, Arrays.asList( dependencies ) );
+    }
+
+    private void add( PomRecord record ) throws IOException
+    {
+        manifest.add( repository, write( record.groupId, record.artifactId, record.version, "original" ), record );
+    }
+
+    private File write( String groupId, String artifactId, String version, String content ) throws IOException
+    {
+        File pom = pom( groupId, artifactId, version );
+        pom.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream( pom );
+        try
+        {
+            out.write( (artifactId + " " + version + " " + content).getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            out.close();
+        }
+        return pom;
+    }
+
+    private File pom( String groupId, String artifactId, String version )
+    {
+        return new File( repository, groupId.replace( '.', '/' ) + "/" + artifactId + "/" + version + "/" + artifactId
+                + "-" + version + ".pom" );
+    }
+
+    private static List<String> artifactIds( Collection<File> poms )
+    {
+        List<String> artifactIds = new ArrayList<String>();
+        for ( File pom : poms )
+        {
+            artifactIds.add( pom.getParentFile().getParentFile().getName() );
+        }
+        return artifactIds;
+    }
+}
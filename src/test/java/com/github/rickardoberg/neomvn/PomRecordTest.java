@@ -0,0 +1,76 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PomRecordTest
+{
+    @Test
+    public void importedBomsComeFromTheRawModel()
+    {
+        Model raw = new Model();
+        raw.setArtifactId( "user" );
+        Parent parent = new Parent();
+        parent.setGroupId( "org.example" );
+        parent.setArtifactId( "parent" );
+        parent.setVersion( "1.0" );
+        raw.setParent( parent );
+        raw.addProperty( "bom.version", "2.0" );
+        DependencyManagement management = new DependencyManagement();
+        management.addDependency( dependency( "org.example", "bom", "${bom.version}", "import", "pom" ) );
+        management.addDependency( dependency( "${project.groupId}", "other-bom", "${project.version}", "import", "pom" ) );
+        management.addDependency( dependency( "org.example", "managed", "1.0", null, "jar" ) );
+        management.addDependency( dependency( "org.example", "unknown", "${undefined}", "import", "pom" ) );
+        raw.setDependencyManagement( management );
+
+        Model effective = raw.clone();
+        effective.setDependencyManagement( null );
+
+        PomRecord record = PomRecord.from( effective, raw );
+
+        assertEquals( "org.example:user:1.0", record.toString() );
+        assertEquals( Arrays.asList( "org.example:bom:2.0", "org.example:other-bom:1.0",
+                "org.example:unknown:${undefined}" ), record.imports );
+        assertEquals( Collections.<String>emptyList(), PomRecord.from( effective ).imports );
+    }
+
+    @Test
+    public void importsAreWrittenAndRead() throws IOException
+    {
+        PomRecord record = new PomRecord( "g", "a", "1.0", "name", "g:parent:1.0", Arrays.asList( "g:bom:1.0" ),
+                Arrays.asList( new PomRecord.DependencyRecord( "g", "b", "[1.0,)", "test", true ) ) );
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        record.write( new DataOutputStream( bytes ) );
+        PomRecord read = PomRecord.read( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+
+        assertEquals( "g:a:1.0", read.toString() );
+        assertEquals( "g:parent:1.0", read.parent );
+        assertEquals( Arrays.asList( "g:bom:1.0" ), read.imports );
+        assertEquals( "[1.0,)", read.dependencies.get( 0 ).version );
+    }
+
+    private static Dependency dependency( String groupId, String artifactId, String version, String scope, String type )
+    {
+        Dependency dependency = new Dependency();
+        dependency.setGroupId( groupId );
+        dependency.setArtifactId( artifactId );
+        dependency.setVersion( version );
+        dependency.setScope( scope );
+        dependency.setType( type );
+        return dependency;
+    }
+}
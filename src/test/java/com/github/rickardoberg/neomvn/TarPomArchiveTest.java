@@ -0,0 +1,102 @@
+package com.github.rickardoberg.neomvn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TarPomArchiveTest
+{
+    // Longer than the 100 characters a plain tar header has room for
+    private static final String LONG_PATH = "org/example/with/a/group/that/is/much/deeper/than/usual/artifact-with-a-long-name/"
+            + "1.0.0-SNAPSHOT/artifact-with-a-long-name-1.0.0-SNAPSHOT.pom";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void gnuLongNames() throws IOException
+    {
+        check( TarArchiveOutputStream.LONGFILE_GNU );
+    }
+
+    @Test
+    public void paxLongNames() throws IOException
+    {
+        check( TarArchiveOutputStream.LONGFILE_POSIX );
+    }
+
+    private void check( int longFileMode ) throws IOException
+    {
+        File file = folder.newFile( "snapshot.tar.gz" );
+        TarArchiveOutputStream tar = new TarArchiveOutputStream( new GZIPOutputStream( new FileOutputStream( file ) ) );
+        try
+        {
+            tar.setLongFileMode( longFileMode );
+            add( tar, "repository/org/example/lib/1.0/lib-1.0.pom", "<project>lib</project>" );
+            add( tar, "repository/org/example/lib/1.0/lib-1.0.jar", "not a POM" );
+            add( tar, "repository/" + LONG_PATH, "<project>long</project>" );
+        }
+        finally
+        {
+            tar.close();
+        }
+
+        TarPomArchive archive = new TarPomArchive( file );
+        try
+        {
+            assertEquals( Arrays.asList( "org/example/lib/1.0/lib-1.0.pom", LONG_PATH ), archive.getPoms() );
+            assertTrue( archive.contains( LONG_PATH ) );
+            assertFalse( archive.contains( "org/example/lib/1.0/lib-1.0.jar" ) );
+            assertEquals( "<project>lib</project>", read( archive, "org/example/lib/1.0/lib-1.0.pom" ) );
+            assertEquals( "<project>long</project>", read( archive, LONG_PATH ) );
+        }
+        finally
+        {
+            archive.close();
+        }
+    }
+
+    private static void add( TarArchiveOutputStream tar, String name, String content ) throws IOException
+    {
+        byte[] bytes = content.getBytes( "UTF-8" );
+        TarArchiveEntry entry = new TarArchiveEntry( name );
+        entry.setSize( bytes.length );
+        tar.putArchiveEntry( entry );
+        tar.write( bytes );
+        tar.closeArchiveEntry();
+    }
+
+    private static String read( TarPomArchive archive, String path ) throws IOException
+    {
+        InputStream in = archive.source( path ).getInputStream();
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int len;
+            while ( (len = in.read( buffer )) != -1 )
+            {
+                out.write( buffer, 0, len );
+            }
+            return out.toString( "UTF-8" );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.rickardoberg.neomvn;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class VersionCatalogTest
+{
+    private VersionCatalog catalog;
+
+    @Before
+    public void catalog()
+    {
+        catalog = new VersionCatalog();
+        for ( String version : new String[]{"1.0", "1.1", "1.2", "1.5", "2.0-SNAPSHOT", "2.0", "2.1-SNAPSHOT"} )
+        {
+            catalog.add( "g", "a", version );
+        }
+    }
+
+    @Test
+    public void versionThatIsNotARangeIsKept()
+    {
+        assertEquals( "1.3", catalog.resolve( "g", "a", "1.3" ) );
+    }
+
+    @Test
+    public void highestVersionInRange()
+    {
+        assertEquals( "1.5", catalog.resolve( "g", "a", "[1.0,2.0)" ) );
+        assertEquals( "2.0", catalog.resolve( "g", "a", "[1.0,2.0]" ) );
+        assertEquals( "1.1", catalog.resolve( "g", "a", "(1.0,1.2)" ) );
+        assertEquals( "1.2", catalog.resolve( "g", "a", "[1.2]" ) );
+        assertEquals( "1.0", catalog.resolve( "g", "a", "(,1.0]" ) );
+    }
+
+    @Test
+    public void releasesArePreferredOverSnapshots()
+    {
+        assertEquals( "2.0", catalog.resolve( "g", "a", "[1.0,)" ) );
+        assertEquals( "2.1-SNAPSHOT", catalog.resolve( "g", "a", "(2.0,)" ) );
+    }
+
+    @Test
+    public void unionResolvesToHighestOfAnyRestriction()
+    {
+        assertEquals( "2.0", catalog.resolve( "g", "a", "(,1.0],[1.2,)" ) );
+        assertEquals( "1.2", catalog.resolve( "g", "a", "(,1.0],[1.2,1.5)" ) );
+        assertEquals( "1.0", catalog.resolve( "g", "a", "(,1.0],[3.0,)" ) );
+    }
+
+    @Test
+    public void rangeNothingMatchesFallsBack()
+    {
+        assertEquals( "3.0", catalog.resolve( "g", "a", "[3.0,4.0)" ) );
+        assertEquals( "4.0", catalog.resolve( "g", "a", "[3.0,4.0]" ) );
+        assertEquals( "1.0", catalog.resolve( "g", "unknown", "[1.0,2.0)" ) );
+        assertEquals( "[1.0", catalog.resolve( "g", "a", "[1.0" ) );
+    }
+
+    @Test
+    public void addedAndRemovedVersions()
+    {
+        assertEquals( "2.0", catalog.resolve( "g", "a", "[1.0,3.0)" ) );
+
+        catalog.add( "g", "a", "2.5" );
+        assertEquals( "2.5", catalog.resolve( "g", "a", "[1.0,3.0)" ) );
+
+        catalog.remove( "g", "a", "2.5" );
+        catalog.remove( "g", "a", "2.0" );
+        assertEquals( "1.5", catalog.resolve( "g", "a", "[1.0,3.0)" ) );
+    }
+}
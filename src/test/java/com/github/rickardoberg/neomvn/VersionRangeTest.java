@@ -0,0 +1,111 @@
+package com.github.rickardoberg.neomvn;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VersionRangeTest
+{
+    @Test
+    public void inclusiveAndExclusiveBounds()
+    {
+        VersionRange range = new VersionRange( "[1.0,2.0)" );
+        assertFalse( contains( range, "0.9" ) );
+        assertTrue( contains( range, "1.0" ) );
+        assertTrue( contains( range, "1.5" ) );
+        assertFalse( contains( range, "2.0" ) );
+        assertTrue( contains( range, "2.0-SNAPSHOT" ) );
+
+        range = new VersionRange( "(1.0,2.0]" );
+        assertFalse( contains( range, "1.0" ) );
+        assertTrue( contains( range, "1.0.1" ) );
+        assertTrue( contains( range, "2.0" ) );
+        assertFalse( contains( range, "2.0.1" ) );
+    }
+
+    @Test
+    public void unboundedSides()
+    {
+        VersionRange range = new VersionRange( "(,1.0]" );
+        assertTrue( contains( range, "0.1" ) );
+        assertTrue( contains( range, "1.0" ) );
+        assertFalse( contains( range, "1.1" ) );
+
+        range = new VersionRange( "[1.5,)" );
+        assertFalse( contains( range, "1.4" ) );
+        assertTrue( contains( range, "1.5" ) );
+        assertTrue( contains( range, "99" ) );
+    }
+
+    @Test
+    public void exactVersion()
+    {
+        VersionRange range = new VersionRange( "[1.2]" );
+        assertFalse( contains( range, "1.1" ) );
+        assertTrue( contains( range, "1.2" ) );
+        assertTrue( contains( range, "1.2.0" ) );
+        assertFalse( contains( range, "1.2.1" ) );
+    }
+
+    @Test
+    public void unionOfRestrictions()
+    {
+        VersionRange range = new VersionRange( "(,1.0],[1.2,)" );
+        assertEquals( 2, range.getRestrictions().size() );
+        assertTrue( contains( range, "0.5" ) );
+        assertTrue( contains( range, "1.0" ) );
+        assertFalse( contains( range, "1.1" ) );
+        assertTrue( contains( range, "1.2" ) );
+        assertTrue( contains( range, "3.0" ) );
+
+        range = new VersionRange( "[1.0,1.2),(1.2,)" );
+        assertTrue( contains( range, "1.1" ) );
+        assertFalse( contains( range, "1.2" ) );
+        assertTrue( contains( range, "1.3" ) );
+    }
+
+    @Test
+    public void softRequirementIsNotARange()
+    {
+        assertFalse( VersionRange.isRange( "1.0" ) );
+        assertEquals( "1.0", VersionRange.fallback( "1.0" ) );
+    }
+
+    @Test
+    public void fallback()
+    {
+        assertEquals( "2.0", VersionRange.fallback( "[1.0,2.0]" ) );
+        assertEquals( "1.0", VersionRange.fallback( "[1.0,2.0)" ) );
+        assertEquals( "1.0", VersionRange.fallback( "[1.0,)" ) );
+        assertEquals( "1.0", VersionRange.fallback( "(,1.0)" ) );
+        assertEquals( "1.2", VersionRange.fallback( "(,1.0],[1.2,)" ) );
+        // Malformed ranges are kept as they are
+        assertEquals( "[1.0", VersionRange.fallback( "[1.0" ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void unclosedRange()
+    {
+        new VersionRange( "[1.0,2.0" );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void singleVersionWithoutBrackets()
+    {
+        new VersionRange( "(1.0)" );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void boundsOutOfOrder()
+    {
+        new VersionRange( "[2.0,1.0]" );
+    }
+
+    private static boolean contains( VersionRange range, String version )
+    {
+        return range.contains( new ComparableVersion( version ) );
+    }
+}